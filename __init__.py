@@ -59,23 +59,15 @@ def ExecuteSimpleTest(source):
     except Exception as e:
         print("Error in simple test: " + str(e))
 
-def ExecuteTitleCommand(source, arguments):
+def ExecuteTitleCommand(source, player, action, message):
+    command_api = PyCommandAPI.getInstance()
     try:
-        command_api = PyCommandAPI.getInstance()
-        args = arguments.split()
-        if len(args) >= 3 and args[1] == "title":
-            player_name = args[0]
-            message = " ".join(args[2:])
-            success = ShowTitleByName(player_name, message)
-            if success:
-                command_api.sendFeedback(source, "Title displayed to %s: %s" % (player_name, message), False)
-                return 1
-            else:
-                command_api.sendError(source, "Failed to display title to %s" % player_name)
-                return 0
-        else:
+        if action != "title":
             command_api.sendError(source, "Invalid command format. Use: /title-to-player <player> title <message>")
             return 0
+        command_api.showTitle(player, message, 10, 70, 20)
+        command_api.sendFeedback(source, "Title displayed to %s: %s" % (player.getName().getString(), message), False)
+        return 1
     except Exception as e:
         command_api.sendError(source, "Error executing command: %s" % str(e))
         return 0
@@ -84,7 +76,7 @@ def RegisterCommands():
     command_api = PyCommandAPI.getInstance()
     command_api.registerCommandWithStringArgument("test-py", "message", True, ExecuteTestPy)
     print("Successfully registered /test-py command")
-    command_api.registerCommandWithStringArgument("title-to-player", "Shows a title to a specified player", True, ExecuteTitleCommand)
+    command_api.registerTypedCommand("title-to-player", "player:player action:word message:greedy", ExecuteTitleCommand)
     print("Successfully registered /title-to-player command with format: /title-to-player <player> title <message>")
     command_api.registerSimpleCommand("simple-test", ExecuteSimpleTest)
     print("Successfully registered /simple-test command")
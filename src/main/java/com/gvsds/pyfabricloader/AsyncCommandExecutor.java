@@ -0,0 +1,111 @@
+package com.gvsds.pyfabricloader;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 异步命令的执行器
+ * 运行时支持虚拟线程（Java 21+）时每个命令使用一个虚拟线程，否则使用守护线程池。
+ * 超过 Commands.AsyncTimeoutMs 仍未完成的命令会被中断，并通过回调报告给命令来源。
+ * 中断本身不会停止Jython代码：Python部分由调用方以 getTimeoutMillis() 为预算的CallbackWatchdog中止，
+ * 中断只能唤醒阻塞在可中断的Java调用（sleep、wait、可中断的IO）中的线程，忽略中断的Java调用会继续运行到结束。
+ */
+public class AsyncCommandExecutor {
+    private static AsyncCommandExecutor instance;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timeouts;
+
+    private AsyncCommandExecutor() {
+        this.executor = createExecutor();
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PyFabric-AsyncTimeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized AsyncCommandExecutor getInstance() {
+        if (instance == null) {
+            instance = new AsyncCommandExecutor();
+        }
+        return instance;
+    }
+
+    /**
+     * 优先使用虚拟线程，编译目标为Java 17，因此通过反射获取
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            PyFabricLoader.LOGGER.info("Async Python commands run on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            PyFabricLoader.LOGGER.info("Virtual threads are not available, async Python commands use a thread pool");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "PyFabric-Async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(PyFabricLoader.class.getClassLoader());
+            return thread;
+        });
+    }
+
+    /**
+     * 异步任务的超时时间（毫秒），0表示不限制
+     */
+    public long getTimeoutMillis() {
+        return ConfigManager.getInstance().getInt("Commands.AsyncTimeoutMs", 10000);
+    }
+
+    /**
+     * 在后台执行命令回调
+     * @param commandName 命令名，用于日志和错误信息
+     * @param task 命令回调
+     * @param onFailure 失败或超时时调用，参数为错误信息
+     */
+    public void submit(String commandName, IntSupplier task, Consumer<String> onFailure) {
+        long timeoutMillis = getTimeoutMillis();
+        // 命令结束时取消超时任务，避免已完成命令的超时任务堆积在队列中
+        CompletableFuture<ScheduledFuture<?>> timeout = new CompletableFuture<>();
+        Future<?> future = executor.submit(() -> {
+            Thread.currentThread().setContextClassLoader(PyFabricLoader.class.getClassLoader());
+            try {
+                task.getAsInt();
+            } catch (Exception e) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    PyFabricLoader.LOGGER.error("Error executing async Python command /{}: {}", commandName, e.getMessage(), e);
+                    onFailure.accept("Command /" + commandName + " failed: " + e.getMessage());
+                }
+            } finally {
+                timeout.thenAccept(scheduled -> scheduled.cancel(false));
+            }
+        });
+        if (timeoutMillis > 0) {
+            timeout.complete(timeouts.schedule(() -> {
+                if (!future.isDone() && future.cancel(true)) {
+                    PyFabricLoader.LOGGER.warn("Async Python command /{} timed out after {} ms", commandName, timeoutMillis);
+                    onFailure.accept("Command /" + commandName + " timed out after " + timeoutMillis + " ms");
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * 在后台计算结果
+     * 超过 Commands.AsyncTimeoutMs 仍未完成时返回的Future以TimeoutException完成，任务本身不会被停止
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        long timeoutMillis = getTimeoutMillis();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            Thread.currentThread().setContextClassLoader(PyFabricLoader.class.getClassLoader());
+            return task.get();
+        }, executor);
+        return timeoutMillis > 0 ? future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS) : future;
+    }
+}
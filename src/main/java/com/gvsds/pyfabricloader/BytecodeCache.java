@@ -0,0 +1,146 @@
+package com.gvsds.pyfabricloader;
+
+import org.python.core.BytecodeLoader;
+import org.python.core.PyCode;
+import org.python.core.imp;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 编译后字节码的持久缓存
+ * Jython把Python源码编译为Java类，这里把生成的类字节保存在 libs/.jython-cache/bytecode 下，
+ * 以源码、文件名和Jython版本的哈希为键，热启动时直接加载而不再解析和编译。
+ * 源码修改后旧条目不会再被命中，因此缓存总大小超过上限时按最近使用时间（命中时更新文件修改时间）淘汰。
+ */
+public class BytecodeCache {
+    private final File cacheDir;
+    private final long maxBytes;
+    private volatile String jythonVersion;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param maxBytes 缓存总大小上限，0表示不限制
+     */
+    public BytecodeCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取源码对应的代码对象，未命中时编译并写入缓存
+     * @param name 模块名
+     * @param source Python源码
+     * @param filename 代码对象中记录的文件名
+     */
+    public PyCode compile(String name, String source, String filename) throws IOException {
+        if (jythonVersion == null) {
+            // 延迟到Jython初始化之后再读取版本信息
+            jythonVersion = org.python.core.Version.PY_VERSION + "/" + imp.getAPIVersion();
+        }
+        String key = hash(jythonVersion + "\0" + filename + "\0" + source);
+        File cached = new File(cacheDir, key + ".class");
+        String className = sanitize(name) + "$py";
+
+        if (cached.exists()) {
+            try {
+                PyCode code = BytecodeLoader.makeCode(className, Files.readAllBytes(cached.toPath()), filename);
+                hits.incrementAndGet();
+                cached.setLastModified(System.currentTimeMillis());
+                PyFabricLoader.LOGGER.debug("Bytecode cache hit for {}", filename);
+                return code;
+            } catch (Exception e) {
+                PyFabricLoader.LOGGER.warn("Discarding unreadable bytecode cache entry for {}", filename, e);
+                cached.delete();
+            }
+        }
+
+        misses.incrementAndGet();
+        PyFabricLoader.LOGGER.debug("Bytecode cache miss for {}", filename);
+        byte[] bytes = imp.compileSource(name, new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), filename);
+        try {
+            // 先写临时文件再重命名，避免并行加载时读到半写入的文件
+            cacheDir.mkdirs();
+            File temp = File.createTempFile(key, ".tmp", cacheDir);
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            PyFabricLoader.LOGGER.warn("Failed to write bytecode cache entry for {}", filename, e);
+        }
+        return BytecodeLoader.makeCode(className, bytes, filename);
+    }
+
+    /**
+     * 读取文件并获取其代码对象
+     */
+    public PyCode compileFile(String name, File file) throws IOException {
+        String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return compile(name, source, file.getAbsolutePath());
+    }
+
+    /**
+     * 总大小超过上限时删除最久未使用的条目，在一批模组加载完成后调用
+     */
+    public synchronized void evictIfNeeded() {
+        if (maxBytes <= 0) {
+            return;
+        }
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(".class"));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        Map<File, long[]> stats = new HashMap<>();
+        for (File file : files) {
+            long[] stat = {file.length(), file.lastModified()};
+            stats.put(file, stat);
+            total += stat[0];
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(file -> stats.get(file)[1]));
+        int removed = 0;
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.delete()) {
+                total -= stats.get(file)[0];
+                removed++;
+            }
+        }
+        PyFabricLoader.LOGGER.info("Evicted {} bytecode cache entries, {} KB left", removed, total / 1024);
+    }
+
+    public int getHits() { return hits.get(); }
+    public int getMisses() { return misses.get(); }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(text.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.gvsds.pyfabricloader;
+
+import org.python.core.Py;
+import org.python.core.PyCode;
+import org.python.core.PyList;
+import org.python.core.PyModule;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.core.imp;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 模组内模块的导入器
+ * 登记在模组PySystemState的 sys.path_importer_cache 中，只接管模组自己的路径条目（压缩包或解压目录）及其包目录，
+ * sys.path 的查找顺序不变。导入的源码经由BytecodeCache编译，模组 import 的模块在热启动时同样从
+ * libs/.jython-cache/bytecode 加载，而不是每次启动都重新编译（zipimport无法写入$py.class）。
+ */
+public class CachedModImporter {
+    private final String root;
+    private final File archive;
+    // 压缩包内的条目名，解压目录时为null
+    private final Set<String> entries;
+    private final BytecodeCache cache;
+    private final PySystemState state;
+
+    private CachedModImporter(String root, File archive, Set<String> entries, BytecodeCache cache, PySystemState state) {
+        this.root = root;
+        this.archive = archive;
+        this.entries = entries;
+        this.cache = cache;
+        this.state = state;
+    }
+
+    /**
+     * 为压缩包中的模组安装导入器
+     */
+    public static void installForArchive(PySystemState state, File archive, BytecodeCache cache) throws IOException {
+        Set<String> entries = new HashSet<>();
+        try (ZipFile zip = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> all = zip.entries();
+            while (all.hasMoreElements()) {
+                entries.add(all.nextElement().getName());
+            }
+        }
+        new CachedModImporter(archive.getAbsolutePath(), archive, entries, cache, state).register(archive.getAbsolutePath());
+    }
+
+    /**
+     * 为解压到目录的模组安装导入器
+     */
+    public static void installForDirectory(PySystemState state, File directory, BytecodeCache cache) {
+        new CachedModImporter(directory.getAbsolutePath(), null, null, cache, state).register(directory.getAbsolutePath());
+    }
+
+    private void register(String pathEntry) {
+        state.path_importer_cache.__setitem__(Py.newString(pathEntry), Py.java2py(this));
+    }
+
+    /**
+     * PEP 302 查找，模块不在模组中时返回None，交给后面的路径条目
+     */
+    public PyObject find_module(String fullname) {
+        return locate(fullname) != null ? Py.java2py(this) : Py.None;
+    }
+
+    public PyObject find_module(String fullname, PyObject path) {
+        return find_module(fullname);
+    }
+
+    /**
+     * PEP 302 加载，模块对象与zipimport或目录导入时一样登记到sys.modules
+     */
+    public PyObject load_module(String fullname) throws IOException {
+        String relative = locate(fullname);
+        if (relative == null) {
+            throw Py.ImportError("No module named " + fullname);
+        }
+        boolean isPackage = relative.endsWith("/__init__.py");
+        String filename = root + File.separator + relative.replace('/', File.separatorChar);
+        PyCode code = cache.compile(fullname, read(relative), filename);
+
+        PyModule module = imp.addModule(fullname);
+        module.__setattr__("__loader__", Py.java2py(this));
+        if (isPackage) {
+            // 包目录也交给本导入器，包内的子模块同样经过字节码缓存
+            String packagePath = root + File.separator
+                    + fullname.replace('.', File.separatorChar);
+            module.__setattr__("__path__", new PyList(new PyObject[]{Py.newString(packagePath)}));
+            register(packagePath);
+        }
+        return imp.createFromCode(fullname, code, filename);
+    }
+
+    /**
+     * 模块在模组中的相对路径，找不到时返回null
+     */
+    private String locate(String fullname) {
+        String base = fullname.replace('.', '/');
+        for (String candidate : new String[]{base + "/__init__.py", base + ".py"}) {
+            if (exists(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean exists(String relative) {
+        if (entries != null) {
+            return entries.contains(relative);
+        }
+        return new File(root, relative).isFile();
+    }
+
+    private String read(String relative) throws IOException {
+        if (archive == null) {
+            return new String(Files.readAllBytes(new File(root, relative).toPath()), StandardCharsets.UTF_8);
+        }
+        try (ZipFile zip = new ZipFile(archive);
+             InputStream in = zip.getInputStream(zip.getEntry(relative))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.gvsds.pyfabricloader;
+
+import org.python.core.Py;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.ThreadState;
+import org.python.core.TraceFunction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Python回调的运行时间预算
+ * 通过Jython的跟踪函数（与sys.settrace相同的机制）协作式地检查：回调执行期间每64个行事件检查一次时间，
+ * 超出预算后在下一个行事件抛出KeyboardInterrupt中止回调，并记录当时的Python调用栈。
+ * 之后的每个行事件都会再次抛出，因此回调中的 except 无法吞掉中止。
+ * 预算来自info.json中的 "budget-ms"，未设置时使用 Commands.BudgetMs，0表示不限制。
+ */
+public class CallbackWatchdog {
+    private static final CallbackWatchdog INSTANCE = new CallbackWatchdog();
+    private static final int CHECK_INTERVAL_MASK = 63;
+    private static final int MAX_STACK_DEPTH = 20;
+
+    private final ThreadLocal<BudgetTrace> traces = ThreadLocal.withInitial(BudgetTrace::new);
+    private final Map<String, AtomicInteger> overruns = new ConcurrentHashMap<>();
+
+    private CallbackWatchdog() {
+    }
+
+    public static CallbackWatchdog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始计时一个模组的回调
+     * @return 计时句柄，预算被禁用或已在计时中的嵌套调用返回null
+     */
+    public Budget begin(String modId) {
+        long budgetMillis = PythonManager.getInstance().getCallbackBudgetMillis(modId);
+        return begin(modId, budgetMillis);
+    }
+
+    /**
+     * 以指定的预算开始计时
+     */
+    public Budget begin(String owner, long budgetMillis) {
+        if (budgetMillis <= 0) {
+            return null;
+        }
+        BudgetTrace trace = traces.get();
+        if (trace.active) {
+            // 嵌套调用由外层的预算约束
+            return null;
+        }
+        ThreadState state = Py.getThreadState();
+        trace.start(owner, budgetMillis, state.tracefunc);
+        state.tracefunc = trace;
+        return trace;
+    }
+
+    /**
+     * 结束计时并恢复原来的跟踪函数
+     * @return 回调被中止时返回包含Python调用栈的报告，否则返回null
+     */
+    public String end(Budget budget) {
+        if (budget == null) {
+            return null;
+        }
+        BudgetTrace trace = (BudgetTrace) budget;
+        Py.getThreadState().tracefunc = trace.previous;
+        trace.active = false;
+        trace.previous = null;
+        if (!trace.aborted) {
+            return null;
+        }
+
+        int count = trace.owner != null
+                ? overruns.computeIfAbsent(trace.owner, id -> new AtomicInteger()).incrementAndGet()
+                : 0;
+        String report = "Exceeded time budget of " + trace.budgetMillis + " ms, aborted at:\n" + trace.stack;
+        PyFabricLoader.LOGGER.warn("Python callback of {} exceeded its {} ms budget ({} overruns so far)\n{}",
+                trace.owner != null ? trace.owner : "exec", trace.budgetMillis, count, trace.stack);
+        return report;
+    }
+
+    /**
+     * 模组超出预算的次数
+     */
+    public int getOverruns(String modId) {
+        AtomicInteger count = overruns.get(modId);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * 超出预算次数达到 Commands.BudgetFlagAfter 的模组会在模组列表中标出
+     */
+    public boolean isFlagged(String modId) {
+        int threshold = ConfigManager.getInstance().getInt("Commands.BudgetFlagAfter", 3);
+        return threshold > 0 && getOverruns(modId) >= threshold;
+    }
+
+    public void reset(String modId) {
+        overruns.remove(modId);
+    }
+
+    /**
+     * 计时句柄
+     */
+    public interface Budget {
+    }
+
+    private static final class BudgetTrace extends TraceFunction implements Budget {
+        private String owner;
+        private long budgetMillis;
+        private long deadline;
+        private int events;
+        private boolean active;
+        private boolean aborted;
+        private String stack;
+        private TraceFunction previous;
+
+        private void start(String owner, long budgetMillis, TraceFunction previous) {
+            this.owner = owner;
+            this.budgetMillis = budgetMillis;
+            this.deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+            this.events = 0;
+            this.active = true;
+            this.aborted = false;
+            this.stack = null;
+            this.previous = previous;
+        }
+
+        @Override
+        public TraceFunction traceCall(PyFrame frame) {
+            check(frame);
+            return this;
+        }
+
+        @Override
+        public TraceFunction traceReturn(PyFrame frame, PyObject ret) {
+            return this;
+        }
+
+        @Override
+        public TraceFunction traceLine(PyFrame frame, int line) {
+            if (aborted || (++events & CHECK_INTERVAL_MASK) == 0) {
+                check(frame);
+            }
+            return this;
+        }
+
+        @Override
+        public TraceFunction traceException(PyFrame frame, PyException exc) {
+            return this;
+        }
+
+        private void check(PyFrame frame) {
+            if (!active) {
+                return;
+            }
+            if (!aborted && System.nanoTime() < deadline) {
+                return;
+            }
+            if (!aborted) {
+                aborted = true;
+                stack = formatStack(frame);
+            }
+            throw new PyException(Py.KeyboardInterrupt, "Python callback exceeded its time budget of " + budgetMillis + " ms");
+        }
+
+        /**
+         * 与Python的traceback格式一致，最外层在前
+         */
+        private static String formatStack(PyFrame frame) {
+            List<String> lines = new ArrayList<>();
+            for (PyFrame current = frame; current != null && lines.size() < MAX_STACK_DEPTH; current = current.f_back) {
+                String filename = current.f_code != null ? current.f_code.co_filename : "?";
+                String name = current.f_code != null ? current.f_code.co_name : "?";
+                lines.add("  File \"" + filename + "\", line " + current.getline() + ", in " + name);
+            }
+            Collections.reverse(lines);
+            return String.join("\n", lines);
+        }
+    }
+}
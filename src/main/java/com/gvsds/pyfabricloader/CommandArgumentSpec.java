@@ -0,0 +1,257 @@
+package com.gvsds.pyfabricloader;
+
+import com.mojang.brigadier.Command;
+import com.mojang.brigadier.arguments.ArgumentType;
+import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import net.minecraft.command.argument.BlockPosArgumentType;
+import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Python命令的参数声明
+ * 格式为空格分隔的 "名称:类型"，类型后加 ? 表示可选（可选参数只能在末尾），例如 "target:player amount:int reason:greedy?"。
+ * 也可以传入 [名称, 类型] 或 "名称:类型" 组成的列表。
+ * 参数由Brigadier的解析器解析和校验，回调直接收到对应的Java值，未提供的可选参数为None。
+ */
+public final class CommandArgumentSpec {
+    private final List<Argument> arguments;
+    private final int requiredCount;
+
+    private CommandArgumentSpec(List<Argument> arguments) {
+        this.arguments = Collections.unmodifiableList(arguments);
+        int required = 0;
+        while (required < arguments.size() && !arguments.get(required).optional) {
+            required++;
+        }
+        this.requiredCount = required;
+    }
+
+    /**
+     * 参数类型，名称即声明中使用的类型名
+     */
+    public enum Type {
+        INT {
+            ArgumentType<?> create() { return IntegerArgumentType.integer(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) { return IntegerArgumentType.getInteger(context, name); }
+        },
+        DOUBLE {
+            ArgumentType<?> create() { return DoubleArgumentType.doubleArg(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) { return DoubleArgumentType.getDouble(context, name); }
+        },
+        BOOL {
+            ArgumentType<?> create() { return BoolArgumentType.bool(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) { return BoolArgumentType.getBool(context, name); }
+        },
+        WORD {
+            ArgumentType<?> create() { return StringArgumentType.word(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) { return StringArgumentType.getString(context, name); }
+        },
+        STRING {
+            ArgumentType<?> create() { return StringArgumentType.string(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) { return StringArgumentType.getString(context, name); }
+        },
+        GREEDY {
+            ArgumentType<?> create() { return StringArgumentType.greedyString(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) { return StringArgumentType.getString(context, name); }
+        },
+        PLAYER {
+            ArgumentType<?> create() { return EntityArgumentType.player(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) throws CommandSyntaxException { return EntityArgumentType.getPlayer(context, name); }
+        },
+        PLAYERS {
+            ArgumentType<?> create() { return EntityArgumentType.players(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) throws CommandSyntaxException { return new ArrayList<>(EntityArgumentType.getPlayers(context, name)); }
+        },
+        ENTITY {
+            ArgumentType<?> create() { return EntityArgumentType.entity(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) throws CommandSyntaxException { return EntityArgumentType.getEntity(context, name); }
+        },
+        ENTITIES {
+            ArgumentType<?> create() { return EntityArgumentType.entities(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) throws CommandSyntaxException { return new ArrayList<>(EntityArgumentType.getEntities(context, name)); }
+        },
+        BLOCKPOS {
+            ArgumentType<?> create() { return BlockPosArgumentType.blockPos(); }
+            Object read(CommandContext<ServerCommandSource> context, String name) throws CommandSyntaxException { return BlockPosArgumentType.getBlockPos(context, name); }
+        };
+
+        abstract ArgumentType<?> create();
+
+        abstract Object read(CommandContext<ServerCommandSource> context, String name) throws CommandSyntaxException;
+
+        static Type of(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown argument type: " + name);
+            }
+        }
+    }
+
+    /**
+     * 执行命令，values按声明顺序排列
+     */
+    @FunctionalInterface
+    public interface Executor {
+        int run(CommandContext<ServerCommandSource> context, Object[] values) throws CommandSyntaxException;
+    }
+
+    private static final class Argument {
+        private final String name;
+        private final Type type;
+        private final boolean optional;
+
+        private Argument(String name, Type type, boolean optional) {
+            this.name = name;
+            this.type = type;
+            this.optional = optional;
+        }
+    }
+
+    /**
+     * 解析参数声明
+     * @param spec 字符串或列表
+     * @throws IllegalArgumentException 声明无效时抛出
+     */
+    public static CommandArgumentSpec parse(Object spec) {
+        List<String[]> pairs = new ArrayList<>();
+        if (spec instanceof String) {
+            for (String token : ((String) spec).trim().split("\\s+")) {
+                if (!token.isEmpty()) {
+                    pairs.add(split(token));
+                }
+            }
+        } else if (spec instanceof Iterable) {
+            for (Object element : (Iterable<?>) spec) {
+                if (element instanceof String) {
+                    pairs.add(split((String) element));
+                } else if (element instanceof List && ((List<?>) element).size() == 2) {
+                    List<?> pair = (List<?>) element;
+                    pairs.add(new String[]{String.valueOf(pair.get(0)), String.valueOf(pair.get(1))});
+                } else {
+                    throw new IllegalArgumentException("Invalid argument declaration: " + element);
+                }
+            }
+        } else if (spec != null) {
+            throw new IllegalArgumentException("Argument spec must be a string or a list: " + spec);
+        }
+
+        List<Argument> arguments = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (String[] pair : pairs) {
+            String name = pair[0].trim();
+            String typeName = pair[1].trim();
+            boolean optional = typeName.endsWith("?");
+            if (optional) {
+                typeName = typeName.substring(0, typeName.length() - 1);
+            }
+            if (name.isEmpty() || !names.add(name)) {
+                throw new IllegalArgumentException("Missing or duplicate argument name: " + name);
+            }
+            if (!arguments.isEmpty()) {
+                Argument previous = arguments.get(arguments.size() - 1);
+                if (previous.type == Type.GREEDY) {
+                    throw new IllegalArgumentException("Greedy argument " + previous.name + " must be the last argument");
+                }
+                if (previous.optional && !optional) {
+                    throw new IllegalArgumentException("Required argument " + name + " cannot follow an optional argument");
+                }
+            }
+            arguments.add(new Argument(name, Type.of(typeName), optional));
+        }
+        return new CommandArgumentSpec(arguments);
+    }
+
+    private static String[] split(String token) {
+        int colon = token.indexOf(':');
+        if (colon <= 0 || colon == token.length() - 1) {
+            throw new IllegalArgumentException("Argument must be declared as name:type, got " + token);
+        }
+        return new String[]{token.substring(0, colon), token.substring(colon + 1)};
+    }
+
+    public int size() {
+        return arguments.size();
+    }
+
+    /**
+     * 用法字符串，如 "&lt;target&gt; &lt;amount&gt; [reason]"
+     */
+    public String usage() {
+        StringBuilder usage = new StringBuilder();
+        for (Argument argument : arguments) {
+            if (usage.length() > 0) {
+                usage.append(' ');
+            }
+            usage.append(argument.optional ? "[" : "<").append(argument.name).append(argument.optional ? "]" : ">");
+        }
+        return usage.toString();
+    }
+
+    /**
+     * 构建命令节点链
+     * @param permissionLevel 所需权限等级，0表示所有人可用
+     * @param suggestions 按参数名返回自定义补全，返回null时使用参数类型自带的补全
+     */
+    public LiteralArgumentBuilder<ServerCommandSource> build(String commandName, int permissionLevel,
+                                                             Function<String, SuggestionProvider<ServerCommandSource>> suggestions,
+                                                             Executor executor) {
+        ArgumentBuilder<ServerCommandSource, ?> tail = null;
+        for (int i = arguments.size() - 1; i >= 0; i--) {
+            Argument argument = arguments.get(i);
+            RequiredArgumentBuilder<ServerCommandSource, ?> node = CommandManager.argument(argument.name, argument.type.create());
+            SuggestionProvider<ServerCommandSource> provider = suggestions.apply(argument.name);
+            if (provider != null) {
+                node.suggests(provider);
+            }
+            // 最后一个参数以及其后全部可选的参数节点都可以直接执行
+            if (i + 1 >= requiredCount) {
+                node.executes(command(i + 1, executor));
+            }
+            if (tail != null) {
+                node.then(tail);
+            }
+            tail = node;
+        }
+
+        LiteralArgumentBuilder<ServerCommandSource> literal = CommandManager.literal(commandName);
+        if (permissionLevel > 0) {
+            literal.requires(source -> source.hasPermissionLevel(permissionLevel));
+        }
+        if (requiredCount == 0) {
+            literal.executes(command(0, executor));
+        }
+        if (tail != null) {
+            literal.then(tail);
+        }
+        return literal;
+    }
+
+    private Command<ServerCommandSource> command(int provided, Executor executor) {
+        return context -> {
+            Object[] values = new Object[arguments.size()];
+            for (int i = 0; i < provided; i++) {
+                Argument argument = arguments.get(i);
+                values[i] = argument.type.read(context, argument.name);
+            }
+            return executor.run(context, values);
+        };
+    }
+}
@@ -6,10 +6,7 @@ import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.minecraft.command.CommandRegistryAccess;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
-import net.minecraft.text.Text;
 import java.util.List;
-import java.lang.reflect.Method;
-import java.util.function.Supplier;
 
 public class CommandHandler {
     private static final ConfigManager configManager = ConfigManager.getInstance();
@@ -35,6 +32,22 @@ public class CommandHandler {
                 .then(CommandManager.literal("run")
                     .then(CommandManager.argument("file", StringArgumentType.string())
                         .executes(context -> executePythonFile(context.getSource(), StringArgumentType.getString(context, "file")))))
+                .then(CommandManager.literal("profile")
+                    .requires(source -> source.hasPermissionLevel(4))
+                    .then(CommandManager.literal("startup")
+                        .executes(context -> showProfile(context.getSource(), "startup")))
+                    .then(CommandManager.literal("reload")
+                        .executes(context -> showProfile(context.getSource(), "reload"))))
+                .then(CommandManager.literal("stats")
+                    .requires(source -> source.hasPermissionLevel(4))
+                    .executes(context -> showStats(context.getSource(), null))
+                    .then(CommandManager.argument("mod", StringArgumentType.string())
+                        .executes(context -> showStats(context.getSource(), StringArgumentType.getString(context, "mod")))))
+                .then(CommandManager.literal("ticks")
+                    .requires(source -> source.hasPermissionLevel(4))
+                    .executes(context -> showTicks(context.getSource(), null))
+                    .then(CommandManager.argument("mod", StringArgumentType.string())
+                        .executes(context -> showTicks(context.getSource(), StringArgumentType.getString(context, "mod")))))
                 .then(CommandManager.literal("help")
                     .executes(context -> showHelp(context.getSource())))
                 .then(CommandManager.literal("about")
@@ -54,6 +67,9 @@ public class CommandHandler {
         help.append("§a/pyfabricloader reload [file.zip] §r- ").append(configManager.getTranslation("commands.help.reload_file")).append("\n");
         help.append("§a/pyfabricloader exec [代码] §r- ").append(configManager.getTranslation("commands.help.exec")).append("\n");
         help.append("§a/pyfabricloader run [文件名.py] §r- ").append(configManager.getTranslation("commands.help.run")).append("\n");
+        help.append("§a/pyfabricloader profile <startup|reload> §r- ").append(configManager.getTranslation("commands.help.profile")).append("\n");
+        help.append("§a/pyfabricloader stats [mod] §r- ").append(configManager.getTranslation("commands.help.stats")).append("\n");
+        help.append("§a/pyfabricloader ticks [mod] §r- ").append(configManager.getTranslation("commands.help.ticks")).append("\n");
         help.append("§a/pyfabricloader help §r- ").append(configManager.getTranslation("commands.help.help")).append("\n");
         help.append("§a/pyfabricloader about §r- ").append(configManager.getTranslation("commands.help.about")).append("\n");
         help.append("§a/pyfabricloader lang [语言] §r- ").append(configManager.getTranslation("commands.help.lang")).append(" (zh-CN, zh-TW, en)");
@@ -75,6 +91,13 @@ public class CommandHandler {
             modList.append("§a- §r").append(mod.getName())
                    .append(" (").append(mod.getId()).append(")")
                    .append(" - v").append(mod.getVersion());
+            if (mod.getState() != PythonManager.PyModInfo.State.LOADED) {
+                modList.append(" §8[").append(configManager.getTranslation("messages.mod_state." + mod.getState().name().toLowerCase())).append("]§r");
+            }
+            if (CallbackWatchdog.getInstance().isFlagged(mod.getId())) {
+                modList.append(" §c[").append(configManager.getTranslation("messages.budget_flagged", configManager.getCurrentLanguage(),
+                        CallbackWatchdog.getInstance().getOverruns(mod.getId()))).append("]§r");
+            }
             if (!mod.getDescription().isEmpty()) {
                 modList.append("\n  §7").append(mod.getDescription());
             }
@@ -113,12 +136,20 @@ public class CommandHandler {
 
     private static int executePython(ServerCommandSource source, String code) {
         try {
-            String result = PythonManager.getInstance().executePython(code);
-            if (result.isEmpty()) {
+            CommandOutput output = openOutput(source, "exec", configManager.getTranslation("messages.execution_result"));
+            String error;
+            try {
+                error = PythonManager.getInstance().executePython(code, output);
+            } finally {
+                // 发送剩余的输出并关闭输出文件，执行抛出异常时也一样
+                output.close();
+            }
+            if (error != null) {
+                sendFeedback(source, "§c" + configManager.getTranslation("messages.execution_error", configManager.getCurrentLanguage(), error), false);
+            } else if (output.isEmpty()) {
                 sendFeedback(source, "§a" + configManager.getTranslation("messages.execution_success_no_output"), false);
-            } else {
-                sendFeedback(source, "§6" + configManager.getTranslation("messages.execution_result") + "\n" + result, false);
             }
+            finishOutput(source, output);
         } catch (Exception e) {
             sendFeedback(source, "§c" + configManager.getTranslation("messages.execution_error", configManager.getCurrentLanguage(), e.getMessage()), false);
             PyFabricLoader.LOGGER.error("Error executing Python code", e);
@@ -128,8 +159,18 @@ public class CommandHandler {
 
     private static int executePythonFile(ServerCommandSource source, String fileName) {
         try {
-            String result = PythonManager.getInstance().executePythonFile(fileName);
-            sendFeedback(source, "§6" + configManager.getTranslation("messages.file_execution_result", configManager.getCurrentLanguage(), fileName) + "\n" + result, false);
+            CommandOutput output = openOutput(source, "run",
+                    configManager.getTranslation("messages.file_execution_result", configManager.getCurrentLanguage(), fileName));
+            String error;
+            try {
+                error = PythonManager.getInstance().executePythonFile(fileName, output);
+            } finally {
+                output.close();
+            }
+            if (error != null) {
+                sendFeedback(source, "§c" + configManager.getTranslation("messages.file_execution_failed", configManager.getCurrentLanguage(), fileName, error), false);
+            }
+            finishOutput(source, output);
         } catch (Exception e) {
             sendFeedback(source, "§c" + configManager.getTranslation("messages.file_execution_failed", configManager.getCurrentLanguage(), fileName, e.getMessage()), false);
             PyFabricLoader.LOGGER.error("Error executing Python file: {}", fileName, e);
@@ -137,6 +178,79 @@ public class CommandHandler {
         return 1;
     }
 
+    /**
+     * exec/run 的输出：Commands.OutputToFile 为true时写入pyfabric/files/output，否则按批发送给执行者
+     */
+    private static CommandOutput openOutput(ServerCommandSource source, String kind, String header) throws java.io.IOException {
+        java.io.File file = null;
+        if (configManager.getBoolean("Commands.OutputToFile", false)) {
+            file = PythonManager.getInstance().createOutputFile(kind);
+            sendFeedback(source, "§6" + configManager.getTranslation("messages.output_to_file", configManager.getCurrentLanguage(), "output/" + file.getName()), false);
+        } else {
+            sendFeedback(source, "§6" + header, false);
+        }
+        return new CommandOutput(chunk -> sendFeedback(source, chunk, false), file);
+    }
+
+    private static void finishOutput(ServerCommandSource source, CommandOutput output) {
+        if (output.isTruncated()) {
+            sendFeedback(source, "§e" + configManager.getTranslation("messages.output_truncated", configManager.getCurrentLanguage(), output.getMaxBytes()), false);
+        }
+    }
+
+    private static int showProfile(ServerCommandSource source, String kind) {
+        LoadProfiler profile = PythonManager.getInstance().getProfile(kind);
+        if (profile == null) {
+            sendFeedback(source, "§6" + configManager.getTranslation("messages.profile_empty", configManager.getCurrentLanguage(), kind), false);
+            return 1;
+        }
+
+        StringBuilder report = new StringBuilder("§6" + configManager.getTranslation("messages.profile_header",
+                configManager.getCurrentLanguage(), kind, String.format("%.2f", profile.getTotalNanos() / 1_000_000.0)) + "\n");
+        for (String line : profile.summarize(10)) {
+            report.append("§a- §r").append(line).append("\n");
+        }
+        report.append("§7").append(configManager.getTranslation("messages.profile_report", configManager.getCurrentLanguage(), "pyfabric/profile-" + kind + ".json"));
+        
+        sendFeedback(source, report.toString(), false);
+        return 1;
+    }
+
+    private static int showStats(ServerCommandSource source, String modId) {
+        String scope = modId != null ? modId : configManager.getTranslation("messages.stats_all");
+        List<CommandStats.Snapshot> stats = CommandStats.getInstance().snapshot(modId);
+        stats.removeIf(snapshot -> snapshot.count == 0);
+        if (stats.isEmpty()) {
+            sendFeedback(source, "§6" + configManager.getTranslation("messages.stats_empty", configManager.getCurrentLanguage(), scope), false);
+            return 1;
+        }
+
+        StringBuilder report = new StringBuilder("§6" + configManager.getTranslation("messages.stats_header", configManager.getCurrentLanguage(), scope) + "\n");
+        for (CommandStats.Snapshot snapshot : stats) {
+            report.append(snapshot.errors > 0 ? "§c- §r" : "§a- §r").append(snapshot).append("\n");
+        }
+        
+        sendFeedback(source, report.toString().trim(), false);
+        return 1;
+    }
+
+    private static int showTicks(ServerCommandSource source, String modId) {
+        String scope = modId != null ? modId : configManager.getTranslation("messages.stats_all");
+        List<TickEventBus.Status> status = TickEventBus.getInstance().status(modId);
+        if (status.isEmpty()) {
+            sendFeedback(source, "§6" + configManager.getTranslation("messages.ticks_empty", configManager.getCurrentLanguage(), scope), false);
+            return 1;
+        }
+
+        StringBuilder report = new StringBuilder("§6" + configManager.getTranslation("messages.ticks_header", configManager.getCurrentLanguage(), scope) + "\n");
+        for (TickEventBus.Status mod : status) {
+            report.append(mod.overruns > 0 || mod.errors > 0 ? "§c- §r" : "§a- §r").append(mod).append("\n");
+        }
+
+        sendFeedback(source, report.toString().trim(), false);
+        return 1;
+    }
+
     private static int showAbout(ServerCommandSource source) {
         StringBuilder about = new StringBuilder();
         about.append("§6").append(configManager.getTranslation("messages.about.header", configManager.getCurrentLanguage(), MOD_VERSION)).append("\n");
@@ -165,25 +279,6 @@ public class CommandHandler {
     }
     
     private static void sendFeedback(ServerCommandSource source, String message, boolean broadcast) {
-        try {
-            Text textMessage = Text.literal(message);
-            
-            // 使用反射调用sendFeedback方法，适配不同版本
-            try {
-                // 尝试调用1.19+版本的方法 (ServerCommandSource.sendFeedback(Supplier<Text>, boolean))
-                Method sendFeedbackMethod = ServerCommandSource.class.getMethod("sendFeedback", Supplier.class, boolean.class);
-                sendFeedbackMethod.invoke(source, (Supplier<Text>) () -> textMessage, broadcast);
-            } catch (NoSuchMethodException e1) {
-                try {
-                    // 尝试调用1.18.x及以下版本的方法 (ServerCommandSource.sendFeedback(Text, boolean))
-                    Method sendFeedbackMethod = ServerCommandSource.class.getMethod("sendFeedback", Text.class, boolean.class);
-                    sendFeedbackMethod.invoke(source, textMessage, broadcast);
-                } catch (NoSuchMethodException e2) {
-                    PyFabricLoader.LOGGER.error("No compatible sendFeedback method found", e2);
-                }
-            }
-        } catch (Exception e) {
-            PyFabricLoader.LOGGER.error("Error sending feedback: {}", e.getMessage(), e);
-        }
+        VersionAdapter.sendFeedback(source, message, broadcast);
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.gvsds.pyfabricloader;
+
+import com.mojang.brigadier.tree.CommandNode;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * 从Brigadier命令树中移除子节点
+ * CommandNode只提供addChild，子节点保存在children、literals、arguments三个私有Map中，
+ * 这里在类加载时取得这三个字段一次，之后直接修改。Brigadier没有混淆，字段名在所有版本中相同。
+ */
+final class CommandNodes {
+    private static final Field CHILDREN;
+    private static final Field LITERALS;
+    private static final Field ARGUMENTS;
+
+    static {
+        Field children = null;
+        Field literals = null;
+        Field arguments = null;
+        try {
+            children = accessible("children");
+            literals = accessible("literals");
+            arguments = accessible("arguments");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            PyFabricLoader.LOGGER.warn("Command nodes cannot be removed at runtime, unloaded mods keep their commands until restart", e);
+            children = null;
+        }
+        CHILDREN = children;
+        LITERALS = literals;
+        ARGUMENTS = arguments;
+    }
+
+    private CommandNodes() {
+    }
+
+    private static Field accessible(String name) throws NoSuchFieldException {
+        Field field = CommandNode.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * 移除子节点，只能在服务器线程调用
+     * 只有当前同名子节点就是传入的节点实例时才移除，不会误删原版或其他模组注册的同名命令
+     * @return 是否移除了节点
+     */
+    static boolean remove(CommandNode<?> parent, CommandNode<?> child) {
+        String name = child.getName();
+        if (CHILDREN == null || parent.getChild(name) != child) {
+            return false;
+        }
+        try {
+            ((Map<?, ?>) CHILDREN.get(parent)).remove(name);
+            ((Map<?, ?>) LITERALS.get(parent)).remove(name);
+            ((Map<?, ?>) ARGUMENTS.get(parent)).remove(name);
+            return true;
+        } catch (IllegalAccessException e) {
+            PyFabricLoader.LOGGER.warn("Failed to remove command node {}", name, e);
+            return false;
+        }
+    }
+}
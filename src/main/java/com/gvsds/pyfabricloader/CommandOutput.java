@@ -0,0 +1,169 @@
+package com.gvsds.pyfabricloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * exec/run 的输出流
+ * 脚本运行期间按行收集输出，每凑满 Commands.OutputBatchLines 行或距上次发送超过 Commands.OutputFlushMs 毫秒
+ * 就把这一批作为一条消息发送，不等脚本结束；累计超过 Commands.OutputMaxBytes 字节后截断。
+ * 时间条件只在下一次写入时检查，没有定时器：脚本输出几行后长时间不再输出时，这几行要等到下一次输出或close才发送。
+ * 这样发送总是发生在执行脚本的线程上，不会从其他线程调用sink。
+ * 指定文件时完整输出写入文件，不发送到聊天栏。
+ */
+public class CommandOutput extends Writer {
+    private final Consumer<String> sink;
+    private final Writer fileWriter;
+    private final long maxBytes;
+    private final int batchLines;
+    private final long flushNanos;
+
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder batch = new StringBuilder();
+    private int batchedLines;
+    private long lastFlush = System.nanoTime();
+    private long bytes;
+    private boolean truncated;
+    private boolean empty = true;
+    private boolean closed;
+
+    /**
+     * @param sink 接收每一批输出
+     * @param file 输出文件，为null时发送到sink
+     */
+    public CommandOutput(Consumer<String> sink, File file) throws IOException {
+        ConfigManager config = ConfigManager.getInstance();
+        this.sink = sink;
+        this.maxBytes = config.getInt("Commands.OutputMaxBytes", 16384);
+        this.batchLines = Math.max(1, config.getInt("Commands.OutputBatchLines", 10));
+        this.flushNanos = config.getInt("Commands.OutputFlushMs", 250) * 1_000_000L;
+        if (file != null) {
+            file.getParentFile().mkdirs();
+            this.fileWriter = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        } else {
+            this.fileWriter = null;
+        }
+    }
+
+    @Override
+    public synchronized void write(char[] buffer, int offset, int length) throws IOException {
+        if (closed || length <= 0) {
+            return;
+        }
+        empty = false;
+        if (fileWriter != null) {
+            fileWriter.write(buffer, offset, length);
+            return;
+        }
+        if (truncated) {
+            return;
+        }
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            char c = buffer[i];
+            if (c == '\n') {
+                appendLine();
+            } else if (c != '\r') {
+                line.append(c);
+            }
+        }
+        if (batchedLines >= batchLines || (batchedLines > 0 && System.nanoTime() - lastFlush >= flushNanos)) {
+            flushBatch();
+        }
+    }
+
+    private void appendLine() {
+        if (truncated) {
+            return;
+        }
+        long lineBytes = utf8Length(line) + 1;
+        if (maxBytes > 0 && bytes + lineBytes > maxBytes) {
+            truncated = true;
+            line.setLength(0);
+            return;
+        }
+        bytes += lineBytes;
+        if (batch.length() > 0) {
+            batch.append('\n');
+        }
+        batch.append(line);
+        line.setLength(0);
+        batchedLines++;
+    }
+
+    private void flushBatch() {
+        if (batch.length() > 0) {
+            sink.accept(batch.toString());
+            batch.setLength(0);
+        }
+        batchedLines = 0;
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * 脚本是否输出过内容
+     */
+    public synchronized boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * 输出是否因超过上限被截断
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 只刷新文件；聊天输出按批发送，未满的一批在close时发送
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (fileWriter != null) {
+            fileWriter.close();
+            return;
+        }
+        if (line.length() > 0) {
+            appendLine();
+        }
+        flushBatch();
+    }
+
+    private static long utf8Length(CharSequence text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,212 @@
+package com.gvsds.pyfabricloader;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Python命令的调用统计
+ * 每个命令记录调用次数、错误次数和耗时直方图。直方图按2的幂分段，每段再细分为8个桶（相对误差约12.5%），
+ * 记录时只做原子加法，不分配对象；百分位数在读取时由桶计数估算。
+ */
+public class CommandStats {
+    private static final CommandStats INSTANCE = new CommandStats();
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 覆盖到 2^42 纳秒（约73分钟）
+    private static final int BUCKET_COUNT = (42 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    private CommandStats() {
+    }
+
+    public static CommandStats getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取命令的统计对象，在注册命令时调用一次，之后直接在该对象上记录
+     * 同一模组重复注册同名命令时保留原有的统计；模组卸载（包括重载）时统计随之删除
+     */
+    public Metrics register(String commandName, String modId) {
+        Metrics existing = metrics.get(commandName);
+        if (existing != null && java.util.Objects.equals(existing.modId, modId)) {
+            return existing;
+        }
+        Metrics created = new Metrics(commandName, modId);
+        metrics.put(commandName, created);
+        return created;
+    }
+
+    /**
+     * @return 命令的统计，没有记录时返回null
+     */
+    public Metrics get(String commandName) {
+        return metrics.get(commandName);
+    }
+
+    /**
+     * 获取统计快照，按总耗时从高到低排序
+     * @param modId 只返回该模组的命令，为null时返回全部
+     */
+    public List<Snapshot> snapshot(String modId) {
+        List<Snapshot> result = new ArrayList<>();
+        for (Metrics value : metrics.values()) {
+            if (modId == null || modId.equals(value.modId)) {
+                result.add(value.snapshot());
+            }
+        }
+        result.sort(Comparator.comparingLong((Snapshot s) -> s.totalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * 删除模组所有命令的统计，在模组卸载时调用
+     */
+    public void removeMod(String modId) {
+        metrics.values().removeIf(value -> java.util.Objects.equals(modId, value.modId));
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        metrics.values().forEach(Metrics::reset);
+    }
+
+    private static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 桶的上界（纳秒），作为该桶内数值的估计
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * 单个命令的统计
+     */
+    public static class Metrics {
+        private final String commandName;
+        private final String modId;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        private Metrics(String commandName, String modId) {
+            this.commandName = commandName;
+            this.modId = modId;
+        }
+
+        /**
+         * 记录一次调用
+         * @param nanos 耗时
+         * @param failed 是否出错
+         */
+        public void record(long nanos, boolean failed) {
+            count.incrementAndGet();
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            buckets.incrementAndGet(bucketIndex(nanos));
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public String getCommandName() { return commandName; }
+        public String getModId() { return modId; }
+
+        private void reset() {
+            count.set(0);
+            errors.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        public Snapshot snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            long recorded = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+                recorded += counts[i];
+            }
+            long max = maxNanos.get();
+            return new Snapshot(commandName, modId, count.get(), errors.get(), totalNanos.get(),
+                    percentile(counts, recorded, 0.50, max), percentile(counts, recorded, 0.99, max), max);
+        }
+
+        private static long percentile(long[] counts, long recorded, double quantile, long max) {
+            if (recorded == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(recorded * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * 某一时刻的统计数据，时间单位为纳秒
+     */
+    public static class Snapshot {
+        public final String commandName;
+        public final String modId;
+        public final long count;
+        public final long errors;
+        public final long totalNanos;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        private Snapshot(String commandName, String modId, long count, long errors, long totalNanos,
+                         long p50Nanos, long p99Nanos, long maxNanos) {
+            this.commandName = commandName;
+            this.modId = modId;
+            this.count = count;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("/%s [%s]: %d calls, %d errors, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    commandName, modId != null ? modId : "?", count, errors,
+                    p50Nanos / 1_000_000.0, p99Nanos / 1_000_000.0, maxNanos / 1_000_000.0);
+        }
+    }
+}
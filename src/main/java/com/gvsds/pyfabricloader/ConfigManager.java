@@ -7,9 +7,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.command.ServerCommandSource;
-import net.minecraft.text.Text;
 import java.io.*;
-import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
@@ -311,26 +309,7 @@ public class ConfigManager {
     }
     
     private void sendFeedback(ServerCommandSource source, String message, boolean broadcast) {
-        try {
-            Text textMessage = Text.literal(message);
-            
-            // Use reflection to call sendFeedback to support different Minecraft versions
-            try {
-                // Try 1.19+ version with Supplier<Text>
-                Method sendFeedbackMethod = ServerCommandSource.class.getMethod("sendFeedback", java.util.function.Supplier.class, boolean.class);
-                sendFeedbackMethod.invoke(source, (java.util.function.Supplier<Text>)() -> textMessage, broadcast);
-            } catch (NoSuchMethodException e1) {
-                // Fallback to 1.18.x version with direct Text parameter
-                try {
-                    Method sendFeedbackMethod = ServerCommandSource.class.getMethod("sendFeedback", Text.class, boolean.class);
-                    sendFeedbackMethod.invoke(source, textMessage, broadcast);
-                } catch (NoSuchMethodException e2) {
-                    PyFabricLoader.LOGGER.error("Could not find sendFeedback method: {}", e2.getMessage());
-                }
-            }
-        } catch (Exception e) {
-            PyFabricLoader.LOGGER.error("Error sending feedback: {}", e.getMessage(), e);
-        }
+        VersionAdapter.sendFeedback(source, message, broadcast);
     }
     
     /**
@@ -382,6 +361,19 @@ public class ConfigManager {
                 : defaultValue;
     }
     
+    /**
+     * Get config value
+     * @param key The config key
+     * @param defaultValue The default value if key not found
+     * @return The config value or default
+     */
+    public int getInt(String key, int defaultValue) {
+        JsonElement element = getConfigElement(key);
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isNumber()
+                ? element.getAsInt()
+                : defaultValue;
+    }
+    
     /**
      * Get nested config element
      * @param key The config key with dot notation (e.g. "Mode.Mods")
@@ -0,0 +1,213 @@
+package com.gvsds.pyfabricloader;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Jython标准库的增量解压
+ * 把jar中 Lib/ 下的条目解压到 libs/Lib，并在 .manifest.json 中记录每个条目的大小和CRC。
+ * 再次启动时只重新解压缺失或变化的条目，未变化的文件通过硬链接带入新目录，
+ * 新目录在临时位置构建完成后再整体替换旧目录，中途失败不会留下半成品。
+ */
+public class JythonStdlibExtractor {
+    private static final String PREFIX = "Lib/";
+    private static final String MANIFEST = ".manifest.json";
+
+    private final File libDir;
+    private final Gson gson = new Gson();
+
+    /**
+     * @param libDir 标准库目录，通常为 pyfabric/libs/Lib
+     */
+    public JythonStdlibExtractor(File libDir) {
+        this.libDir = libDir;
+    }
+
+    /**
+     * 使解压目录与jar中的标准库保持一致
+     * @return 重新解压的条目数，0表示目录已是最新
+     */
+    public int materialize(File jarFile) throws IOException {
+        try (JarFile jar = new JarFile(jarFile)) {
+            // 从jar的中央目录读取条目，不需要解压就能得到大小和CRC
+            Map<String, JarEntry> entries = new LinkedHashMap<>();
+            Enumeration<JarEntry> enumeration = jar.entries();
+            while (enumeration.hasMoreElements()) {
+                JarEntry entry = enumeration.nextElement();
+                if (entry.getName().startsWith(PREFIX) && !entry.isDirectory()) {
+                    entries.put(entry.getName().substring(PREFIX.length()), entry);
+                }
+            }
+
+            Map<String, long[]> manifest = readManifest();
+            List<String> changed = new ArrayList<>();
+            List<String> unchanged = new ArrayList<>();
+            for (Map.Entry<String, JarEntry> entry : entries.entrySet()) {
+                long[] recorded = manifest.get(entry.getKey());
+                File existing = new File(libDir, entry.getKey());
+                if (recorded != null && recorded[0] == entry.getValue().getSize() && recorded[1] == entry.getValue().getCrc()
+                        && existing.length() == recorded[0]) {
+                    unchanged.add(entry.getKey());
+                } else {
+                    changed.add(entry.getKey());
+                }
+            }
+
+            if (changed.isEmpty() && manifest.size() == entries.size()) {
+                PyFabricLoader.LOGGER.info("Jython stdlib is up to date ({} files)", entries.size());
+                return 0;
+            }
+            PyFabricLoader.LOGGER.info("Extracting {} changed Jython stdlib files ({} unchanged)", changed.size(), unchanged.size());
+
+            File parent = libDir.getAbsoluteFile().getParentFile();
+            parent.mkdirs();
+            Path staging = Files.createTempDirectory(parent.toPath(), libDir.getName() + ".staging-");
+            try {
+                for (String name : unchanged) {
+                    Path target = staging.resolve(name);
+                    Files.createDirectories(target.getParent());
+                    linkOrCopy(new File(libDir, name).toPath(), target);
+                }
+                extractParallel(jar, entries, changed, staging);
+                writeManifest(staging.resolve(MANIFEST), entries);
+                swap(staging);
+            } catch (IOException e) {
+                deleteDirectory(staging.toFile());
+                throw e;
+            }
+            return changed.size();
+        }
+    }
+
+    private void extractParallel(JarFile jar, Map<String, JarEntry> entries, List<String> names, Path staging) throws IOException {
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "PyFabric-Stdlib");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(names.size());
+            for (String name : names) {
+                futures.add(executor.submit(() -> {
+                    extractEntry(jar, entries.get(name), staging.resolve(name));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (java.util.concurrent.ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting Jython stdlib", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void extractEntry(JarFile jar, JarEntry entry, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try (InputStream in = jar.getInputStream(entry);
+             ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(source, position, 1 << 20)) > 0) {
+                position += transferred;
+            }
+        }
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 用新构建的目录替换旧目录
+     */
+    private void swap(Path staging) throws IOException {
+        Path current = libDir.toPath();
+        Path old = null;
+        if (Files.exists(current)) {
+            old = current.resolveSibling(libDir.getName() + ".old-" + System.nanoTime());
+            Files.move(current, old, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(staging, current, StandardCopyOption.ATOMIC_MOVE);
+        if (old != null) {
+            deleteDirectory(old.toFile());
+        }
+    }
+
+    private Map<String, long[]> readManifest() {
+        Map<String, long[]> manifest = new HashMap<>();
+        Path path = new File(libDir, MANIFEST).toPath();
+        if (!Files.exists(path)) {
+            return manifest;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            JsonObject json = gson.fromJson(reader, JsonObject.class);
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("entries").entrySet()) {
+                JsonArray values = entry.getValue().getAsJsonArray();
+                manifest.put(entry.getKey(), new long[]{values.get(0).getAsLong(), values.get(1).getAsLong()});
+            }
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.warn("Ignoring unreadable Jython stdlib manifest: {}", e.getMessage());
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Path path, Map<String, JarEntry> entries) throws IOException {
+        JsonObject values = new JsonObject();
+        for (Map.Entry<String, JarEntry> entry : entries.entrySet()) {
+            JsonArray array = new JsonArray();
+            array.add(entry.getValue().getSize());
+            array.add(entry.getValue().getCrc());
+            values.add(entry.getKey(), array);
+        }
+        JsonObject json = new JsonObject();
+        json.add("entries", values);
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            gson.toJson(json, writer);
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,192 @@
+package com.gvsds.pyfabricloader;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * 启动与重载阶段的性能记录
+ * 记录每个阶段（以及每个模组的每个阶段）的耗时（纳秒）和当前线程分配的字节数，
+ * 可以输出为JSON报告供CI对比。各模组在加载线程池中并行记录，因此所有方法都是线程安全的。
+ */
+public class LoadProfiler {
+    private final String kind;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final List<Entry> entries = Collections.synchronizedList(new ArrayList<>());
+    private volatile long totalNanos = -1;
+    private final boolean enabled;
+    // 不记录时所有阶段共用的空Scope
+    private final Scope disabledScope;
+
+    public LoadProfiler(String kind) {
+        this(kind, true);
+    }
+
+    private LoadProfiler(String kind, boolean enabled) {
+        this.kind = kind;
+        this.enabled = enabled;
+        this.disabledScope = enabled ? null : new Scope(null, null);
+    }
+
+    /**
+     * 不记录任何阶段的性能记录，用于启动和重载之间单独加载模组的情况，避免记录无限增长
+     */
+    public static LoadProfiler disabled(String kind) {
+        return new LoadProfiler(kind, false);
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * 开始记录一个全局阶段，配合try-with-resources使用
+     */
+    public Scope phase(String phase) {
+        return enabled ? new Scope(null, phase) : disabledScope;
+    }
+
+    /**
+     * 开始记录某个模组的一个阶段
+     */
+    public Scope phase(String modId, String phase) {
+        return enabled ? new Scope(modId, phase) : disabledScope;
+    }
+
+    /**
+     * 结束整体计时
+     */
+    public void finish() {
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos >= 0 ? totalNanos : System.nanoTime() - startNanos;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("kind", kind);
+        json.addProperty("startedAt", startedAt);
+        json.addProperty("totalNanos", getTotalNanos());
+
+        JsonArray phases = new JsonArray();
+        Map<String, JsonObject> mods = new TreeMap<>();
+        for (Entry entry : snapshot()) {
+            JsonObject item = new JsonObject();
+            item.addProperty("phase", entry.phase);
+            item.addProperty("nanos", entry.nanos);
+            item.addProperty("allocatedBytes", entry.allocatedBytes);
+            item.addProperty("thread", entry.thread);
+            if (entry.modId == null) {
+                phases.add(item);
+            } else {
+                JsonObject mod = mods.computeIfAbsent(entry.modId, id -> {
+                    JsonObject created = new JsonObject();
+                    created.add("phases", new JsonArray());
+                    created.addProperty("totalNanos", 0L);
+                    return created;
+                });
+                mod.getAsJsonArray("phases").add(item);
+                mod.addProperty("totalNanos", mod.get("totalNanos").getAsLong() + entry.nanos);
+            }
+        }
+        json.add("phases", phases);
+        JsonObject modsJson = new JsonObject();
+        mods.forEach(modsJson::add);
+        json.add("mods", modsJson);
+        return json;
+    }
+
+    /**
+     * 写出JSON报告
+     */
+    public void writeReport(File file) {
+        try {
+            file.getParentFile().mkdirs();
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), writer);
+            }
+            PyFabricLoader.LOGGER.info("Wrote {} profile to {}", kind, file.getPath());
+        } catch (IOException e) {
+            PyFabricLoader.LOGGER.warn("Failed to write {} profile", kind, e);
+        }
+    }
+
+    /**
+     * 生成供命令显示的摘要：全局阶段以及耗时最多的若干模组
+     */
+    public List<String> summarize(int topMods) {
+        List<String> lines = new ArrayList<>();
+        Map<String, long[]> modTotals = new HashMap<>();
+        for (Entry entry : snapshot()) {
+            if (entry.modId == null) {
+                lines.add(formatLine(entry.phase, entry.nanos, entry.allocatedBytes));
+            } else {
+                long[] totals = modTotals.computeIfAbsent(entry.modId, id -> new long[2]);
+                totals[0] += entry.nanos;
+                totals[1] += Math.max(0, entry.allocatedBytes);
+            }
+        }
+        modTotals.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(topMods)
+                .forEach(e -> lines.add(formatLine("mod " + e.getKey(), e.getValue()[0], e.getValue()[1])));
+        return lines;
+    }
+
+    private static String formatLine(String name, long nanos, long bytes) {
+        return String.format("%s: %.2f ms, %s", name, nanos / 1_000_000.0, bytes < 0 ? "? KB" : (bytes / 1024) + " KB");
+    }
+
+    private List<Entry> snapshot() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    private static class Entry {
+        private final String modId;
+        private final String phase;
+        private final long nanos;
+        private final long allocatedBytes;
+        private final String thread;
+
+        private Entry(String modId, String phase, long nanos, long allocatedBytes, String thread) {
+            this.modId = modId;
+            this.phase = phase;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.thread = thread;
+        }
+    }
+
+    public class Scope implements AutoCloseable {
+        private final String modId;
+        private final String phase;
+        private final long start = System.nanoTime();
+        private final long allocatedStart = PyInterpreterFactory.currentThreadAllocatedBytes();
+
+        private Scope(String modId, String phase) {
+            this.modId = modId;
+            this.phase = phase;
+        }
+
+        @Override
+        public void close() {
+            if (!enabled) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedStart < 0 ? -1 : PyInterpreterFactory.currentThreadAllocatedBytes() - allocatedStart;
+            entries.add(new Entry(modId, phase, nanos, allocated, Thread.currentThread().getName()));
+        }
+    }
+}
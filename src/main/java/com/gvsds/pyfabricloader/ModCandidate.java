@@ -0,0 +1,86 @@
+package com.gvsds.pyfabricloader;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 待加载的模组
+ * 在执行任何Python代码之前，由文件名和info.json得到的元数据
+ */
+public class ModCandidate {
+    public enum Kind { ARCHIVE, SINGLE_FILE }
+
+    private final String id;
+    private final File file;
+    private final Kind kind;
+    private final JsonObject info;
+    private final int stage;
+    private final Map<String, String> depends;
+    private final String hash;
+
+    /**
+     * @param stage 加载阶段，自定义顺序、优先匹配等规则产生的先后关系，数值越小越先加载
+     */
+    public ModCandidate(String id, File file, Kind kind, JsonObject info, int stage) {
+        this(id, file, kind, info, stage, null);
+    }
+
+    /**
+     * @param hash 发现索引中记录的文件SHA-256，未知时为null
+     */
+    public ModCandidate(String id, File file, Kind kind, JsonObject info, int stage, String hash) {
+        this.id = id;
+        this.hash = hash;
+        this.file = file;
+        this.kind = kind;
+        this.info = info;
+        this.stage = stage;
+        this.depends = parseDepends(info);
+    }
+
+    /**
+     * 解析info.json中的depends字段
+     * 支持的格式：
+     * - ["mod_a", "mod_b"]
+     * - {"mod_a": ">=1.2.0", "mod_b": ""}
+     */
+    private static Map<String, String> parseDepends(JsonObject info) {
+        if (info == null || !info.has("depends")) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        JsonElement element = info.get("depends");
+        if (element.isJsonArray()) {
+            for (JsonElement dep : element.getAsJsonArray()) {
+                result.put(dep.getAsString(), null);
+            }
+        } else if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> dep : element.getAsJsonObject().entrySet()) {
+                String constraint = dep.getValue().isJsonNull() ? null : dep.getValue().getAsString();
+                result.put(dep.getKey(), constraint == null || constraint.isEmpty() ? null : constraint);
+            }
+        } else if (element.isJsonPrimitive()) {
+            result.put(element.getAsString(), null);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    public String getId() { return id; }
+    public File getFile() { return file; }
+    public Kind getKind() { return kind; }
+    public JsonObject getInfo() { return info; }
+    public int getStage() { return stage; }
+    public Map<String, String> getDepends() { return depends; }
+    public String getHash() { return hash; }
+
+    /**
+     * info.json中声明的版本，单文件模组在执行前没有版本信息
+     */
+    public String getVersion() {
+        return info != null && info.has("version") ? info.get("version").getAsString() : "1.0.0";
+    }
+}
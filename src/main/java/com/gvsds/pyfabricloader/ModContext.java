@@ -0,0 +1,78 @@
+package com.gvsds.pyfabricloader;
+
+import org.python.core.Py;
+import org.python.core.PySystemState;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 当前线程正在执行的模组
+ * 每个模组解释器有自己的PySystemState（独立的sys.path），但命令、tick、异步和补全回调都是直接调用PyObject，
+ * 运行在调用线程当前的系统状态下。进入模组上下文时同时切换到该模组的PySystemState，退出时恢复原来的状态，
+ * 这样回调中延迟执行的 import 在任何线程上都能找到模组自己的压缩包或解压目录。
+ * enter 与 exit 必须成对调用，通常放在 try/finally 中。
+ */
+final class ModContext {
+    private static final ThreadLocal<String> EXECUTING_MOD = new ThreadLocal<>();
+    private static final Map<String, PySystemState> STATES = new ConcurrentHashMap<>();
+
+    private final String previousModId;
+    // 进入时被替换的系统状态，没有切换时为null
+    private final PySystemState previousState;
+
+    private ModContext(String previousModId, PySystemState previousState) {
+        this.previousModId = previousModId;
+        this.previousState = previousState;
+    }
+
+    /**
+     * 登记模组的系统状态，在模组加载完成后调用
+     */
+    static void register(String modId, PySystemState state) {
+        STATES.put(modId, state);
+    }
+
+    static void unregister(String modId) {
+        STATES.remove(modId);
+    }
+
+    /**
+     * 当前线程正在执行的模组，不在模组代码中时返回null
+     */
+    static String current() {
+        return EXECUTING_MOD.get();
+    }
+
+    /**
+     * 进入模组的上下文；模组尚未登记系统状态（正在加载）时只记录模组ID
+     */
+    static ModContext enter(String modId) {
+        String previousModId = EXECUTING_MOD.get();
+        EXECUTING_MOD.set(modId);
+        PySystemState state = modId != null ? STATES.get(modId) : null;
+        PySystemState previousState = null;
+        if (state != null) {
+            previousState = Py.getSystemState();
+            if (previousState == state) {
+                previousState = null;
+            } else {
+                Py.setSystemState(state);
+            }
+        }
+        return new ModContext(previousModId, previousState);
+    }
+
+    /**
+     * 恢复进入之前的模组和系统状态
+     */
+    void exit() {
+        if (previousState != null) {
+            Py.setSystemState(previousState);
+        }
+        if (previousModId != null) {
+            EXECUTING_MOD.set(previousModId);
+        } else {
+            EXECUTING_MOD.remove();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.gvsds.pyfabricloader;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 模组发现索引
+ * 在 pyfabric/cache/discovery-index.json 中记录每个压缩包的大小、修改时间、SHA-256、info.json内容以及兼容性判断结果。
+ * 大小和修改时间都没有变化的压缩包直接复用记录，不再打开压缩包；变化的压缩包单独重新读取，其余记录保持不变。
+ * SHA-256只有解压缓存需要，在第一次解压时才计算并记入索引，直接从zip导入时不读取整个压缩包。
+ */
+public class ModDiscoveryIndex {
+    private static final int FORMAT_VERSION = 1;
+
+    private final File indexFile;
+    private final Gson gson = new Gson();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+    private boolean dirty;
+
+    public ModDiscoveryIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 获取压缩包的索引记录，文件变化或没有记录时读取压缩包并更新记录
+     */
+    public synchronized Entry get(File zipFile) throws IOException {
+        load();
+        String key = zipFile.getName();
+        long size = zipFile.length();
+        long mtime = zipFile.lastModified();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.size == size && entry.mtime == mtime) {
+            return entry;
+        }
+
+        entry = new Entry(size, mtime, null, readInfo(zipFile), null, false);
+        entries.put(key, entry);
+        dirty = true;
+        PyFabricLoader.LOGGER.debug("Indexed mod archive {}", key);
+        return entry;
+    }
+
+    /**
+     * 获取压缩包的SHA-256，索引中没有时计算并记录
+     * 在锁外读取压缩包，并行加载的其他模组不必等待
+     */
+    public String getHash(File zipFile) throws IOException {
+        String key = zipFile.getName();
+        long size = zipFile.length();
+        long mtime = zipFile.lastModified();
+        synchronized (this) {
+            load();
+            Entry entry = entries.get(key);
+            if (entry != null && entry.hash != null && entry.size == size && entry.mtime == mtime) {
+                return entry.hash;
+            }
+        }
+        String hash = ModExtractionCache.sha256(zipFile);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.size == size && entry.mtime == mtime) {
+                entries.put(key, new Entry(entry.size, entry.mtime, hash, entry.info, entry.verdictKey, entry.compatible));
+                dirty = true;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 记录兼容性判断结果
+     * @param versionKey 判断时的当前版本，版本变化后记录失效
+     */
+    public synchronized void setVerdict(File zipFile, String versionKey, boolean compatible) {
+        Entry entry = entries.get(zipFile.getName());
+        if (entry != null && (!versionKey.equals(entry.verdictKey) || entry.compatible != compatible)) {
+            entries.put(zipFile.getName(), new Entry(entry.size, entry.mtime, entry.hash, entry.info, versionKey, compatible));
+            dirty = true;
+        }
+    }
+
+    /**
+     * 删除已不存在的压缩包的记录
+     */
+    public synchronized void retain(Set<String> names) {
+        load();
+        if (entries.keySet().retainAll(names)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * 有变化时写回磁盘
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        JsonObject values = new JsonObject();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            values.add(entry.getKey(), entry.getValue().toJson());
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("version", FORMAT_VERSION);
+        json.add("entries", values);
+        try {
+            indexFile.getParentFile().mkdirs();
+            File temp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+            try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                gson.toJson(json, writer);
+            }
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            PyFabricLoader.LOGGER.warn("Failed to write mod discovery index", e);
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            JsonObject json = gson.fromJson(reader, JsonObject.class);
+            if (json == null || !json.has("version") || json.get("version").getAsInt() != FORMAT_VERSION) {
+                return;
+            }
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("entries").entrySet()) {
+                entries.put(entry.getKey(), Entry.fromJson(entry.getValue().getAsJsonObject()));
+            }
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.warn("Ignoring unreadable mod discovery index: {}", e.getMessage());
+            entries.clear();
+        }
+    }
+
+    private JsonObject readInfo(File zipFile) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            ZipEntry infoEntry = zip.getEntry("info.json");
+            if (infoEntry == null) {
+                return null;
+            }
+            try (InputStreamReader reader = new InputStreamReader(zip.getInputStream(infoEntry), StandardCharsets.UTF_8)) {
+                return gson.fromJson(reader, JsonObject.class);
+            }
+        }
+    }
+
+    /**
+     * 单个压缩包的索引记录，不可变
+     */
+    public static class Entry {
+        private final long size;
+        private final long mtime;
+        private final String hash;
+        private final JsonObject info;
+        private final String verdictKey;
+        private final boolean compatible;
+
+        private Entry(long size, long mtime, String hash, JsonObject info, String verdictKey, boolean compatible) {
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+            this.info = info;
+            this.verdictKey = verdictKey;
+            this.compatible = compatible;
+        }
+
+        /**
+         * @return 文件SHA-256，尚未解压过时为null
+         */
+        public String getHash() { return hash; }
+
+        /**
+         * @return info.json的副本，压缩包中没有info.json时返回null
+         */
+        public JsonObject getInfo() { return info != null ? info.deepCopy() : null; }
+
+        /**
+         * @return 在相同版本下记录的兼容性判断，没有记录时返回null
+         */
+        public Boolean getVerdict(String versionKey) {
+            return versionKey.equals(verdictKey) ? compatible : null;
+        }
+
+        private JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("size", size);
+            json.addProperty("mtime", mtime);
+            if (hash != null) {
+                json.addProperty("hash", hash);
+            }
+            if (info != null) {
+                json.add("info", info);
+            }
+            if (verdictKey != null) {
+                json.addProperty("verdictKey", verdictKey);
+                json.addProperty("compatible", compatible);
+            }
+            return json;
+        }
+
+        private static Entry fromJson(JsonObject json) {
+            return new Entry(
+                    json.get("size").getAsLong(),
+                    json.get("mtime").getAsLong(),
+                    json.has("hash") ? json.get("hash").getAsString() : null,
+                    json.has("info") ? json.getAsJsonObject("info") : null,
+                    json.has("verdictKey") ? json.get("verdictKey").getAsString() : null,
+                    json.has("compatible") && json.get("compatible").getAsBoolean());
+        }
+    }
+}
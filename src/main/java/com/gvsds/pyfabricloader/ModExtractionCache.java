@@ -0,0 +1,200 @@
+package com.gvsds.pyfabricloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 模组解压缓存
+ * 以压缩包内容的SHA-256为键，把模组解压到 pyfabric/cache/extracted/&lt;modId&gt;-&lt;hash&gt;，
+ * 内容未变化的压缩包直接复用已解压的目录。
+ * 每个目录中的 .complete 标记文件记录解压后的总字节数，其修改时间作为LRU的访问时间。
+ */
+public class ModExtractionCache {
+    private static final String COMPLETE_MARKER = ".complete";
+
+    private final File cacheDir;
+    private final long maxBytes;
+    private final Set<File> inUse = Collections.synchronizedSet(new HashSet<>());
+
+    public ModExtractionCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取压缩包对应的解压目录，必要时进行解压
+     * 同一模组的旧版本目录会在新版本解压完成后删除
+     */
+    public File extract(String modId, File zipFile) throws IOException {
+        return extract(modId, zipFile, sha256(zipFile));
+    }
+
+    /**
+     * 使用已知的内容哈希获取解压目录，省去再次读取整个压缩包计算哈希
+     */
+    public File extract(String modId, File zipFile, String hash) throws IOException {
+        File target = new File(cacheDir, modId + "-" + hash.substring(0, 16));
+        File marker = new File(target, COMPLETE_MARKER);
+
+        if (marker.exists()) {
+            marker.setLastModified(System.currentTimeMillis());
+            PyFabricLoader.LOGGER.info("Reusing extracted mod {} from cache", modId);
+        } else {
+            cacheDir.mkdirs();
+            Path staging = Files.createTempDirectory(cacheDir.toPath(), ".tmp-" + modId + "-");
+            try {
+                long bytes = extractZip(zipFile, staging.toFile());
+                Files.write(staging.resolve(COMPLETE_MARKER), Long.toString(bytes).getBytes(StandardCharsets.UTF_8));
+                deleteDirectory(target);
+                Files.move(staging, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                deleteDirectory(staging.toFile());
+                throw e;
+            }
+        }
+
+        inUse.add(target);
+        removeOtherGenerations(modId, target);
+        evictIfNeeded();
+        return target;
+    }
+
+    /**
+     * 模组卸载时调用，压缩包已不存在时删除它的全部解压目录
+     */
+    public void release(String modId, File zipFile) {
+        synchronized (inUse) {
+            inUse.removeIf(dir -> isGenerationOf(dir.getName(), modId));
+        }
+        if (zipFile == null || !zipFile.exists()) {
+            removeOtherGenerations(modId, null);
+        }
+    }
+
+    private void removeOtherGenerations(String modId, File keep) {
+        File[] dirs = cacheDir.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            if (!dir.equals(keep) && isGenerationOf(dir.getName(), modId) && !inUse.contains(dir)) {
+                deleteDirectory(dir);
+                PyFabricLoader.LOGGER.info("Removed stale extraction {}", dir.getName());
+            }
+        }
+    }
+
+    private static boolean isGenerationOf(String dirName, String modId) {
+        // 目录名为 <modId>-<16位hash>
+        return dirName.length() == modId.length() + 17 && dirName.startsWith(modId + "-");
+    }
+
+    /**
+     * 超出大小上限时按最近使用时间淘汰未被使用的目录
+     */
+    private synchronized void evictIfNeeded() {
+        File[] dirs = cacheDir.listFiles(dir -> dir.isDirectory() && new File(dir, COMPLETE_MARKER).exists());
+        if (dirs == null) {
+            return;
+        }
+        long total = 0;
+        Map<File, Long> sizes = new HashMap<>();
+        for (File dir : dirs) {
+            long size = readSize(new File(dir, COMPLETE_MARKER));
+            sizes.put(dir, size);
+            total += size;
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(dirs, Comparator.comparingLong(dir -> new File(dir, COMPLETE_MARKER).lastModified()));
+        for (File dir : dirs) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (inUse.contains(dir)) {
+                continue;
+            }
+            deleteDirectory(dir);
+            total -= sizes.get(dir);
+            PyFabricLoader.LOGGER.info("Evicted extraction {} from cache", dir.getName());
+        }
+    }
+
+    private static long readSize(File marker) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static long extractZip(File zipFile, File targetDir) throws IOException {
+        long bytes = 0;
+        Path root = targetDir.toPath().normalize();
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path entryPath = root.resolve(entry.getName()).normalize();
+                // 拒绝跳出目标目录的条目
+                if (!entryPath.startsWith(root)) {
+                    throw new IOException("Illegal zip entry: " + entry.getName());
+                }
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(entryPath);
+                } else {
+                    Files.createDirectories(entryPath.getParent());
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        bytes += Files.copy(in, entryPath, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 计算文件内容的SHA-256
+     */
+    public static String sha256(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[65536];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, len);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        directory.delete();
+    }
+}
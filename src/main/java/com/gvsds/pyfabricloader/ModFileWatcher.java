@@ -0,0 +1,194 @@
+package com.gvsds.pyfabricloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pyfabric/mods 和 pyfabric/libs 的文件监视器
+ * 在配置 HotReload.Enabled 为 true 时启动，合并短时间内的连续文件事件，
+ * 只重载受影响的模组。所有重载工作都在监视线程中执行，不占用服务器线程。
+ * 同一时间只有一个监视器运行；服务器停止时关闭，下一次服务器启动时重新启动。
+ */
+public class ModFileWatcher implements Runnable {
+    private static ModFileWatcher running;
+    private static Thread runningThread;
+
+    private final PythonManager manager;
+    private final Path modsDir;
+    private final Path libsDir;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Set<String> changedMods = new LinkedHashSet<>();
+    private final Set<String> changedLibs = new LinkedHashSet<>();
+
+    private ModFileWatcher(PythonManager manager, File modsDir, File libsDir, long debounceMillis) throws IOException {
+        this.manager = manager;
+        this.modsDir = modsDir.toPath().toAbsolutePath();
+        this.libsDir = libsDir.toPath().toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(this.modsDir);
+        registerLibs(this.libsDir);
+    }
+
+    /**
+     * 根据配置启动监视线程，已在运行时不做任何事
+     */
+    public static synchronized void startIfEnabled(PythonManager manager, File modsDir, File libsDir) {
+        ConfigManager configManager = ConfigManager.getInstance();
+        if (!configManager.getBoolean("HotReload.Enabled", false) || running != null) {
+            return;
+        }
+        try {
+            ModFileWatcher watcher = new ModFileWatcher(manager, modsDir, libsDir,
+                    configManager.getInt("HotReload.DebounceMs", 500));
+            Thread thread = new Thread(watcher, "PyFabric-HotReload");
+            thread.setDaemon(true);
+            thread.setContextClassLoader(PythonManager.class.getClassLoader());
+            thread.start();
+            running = watcher;
+            runningThread = thread;
+            PyFabricLoader.LOGGER.info("Hot reload enabled, watching {} and {}", modsDir, libsDir);
+        } catch (IOException e) {
+            PyFabricLoader.LOGGER.error("Failed to start hot reload watcher", e);
+        }
+    }
+
+    /**
+     * 关闭监视服务并结束监视线程，在服务器停止时调用
+     */
+    public static synchronized void stop() {
+        if (running == null) {
+            return;
+        }
+        try {
+            running.watchService.close();
+        } catch (IOException e) {
+            PyFabricLoader.LOGGER.warn("Failed to close hot reload watcher", e);
+        }
+        runningThread.interrupt();
+        try {
+            // 正在进行的重载不会被中断，等待它结束
+            runningThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = null;
+        runningThread = null;
+        PyFabricLoader.LOGGER.info("Hot reload stopped");
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watchedDirs.put(key, dir);
+    }
+
+    /**
+     * 递归注册libs目录，跳过Jython标准库和缓存目录
+     */
+    private void registerLibs(Path dir) throws IOException {
+        register(dir);
+        File[] children = dir.toFile().listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (name.startsWith(".") || name.equals("Lib")) {
+                continue;
+            }
+            registerLibs(child.toPath());
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // 没有待处理的变化时阻塞等待；有变化时等待防抖时间内没有新事件再处理
+                WatchKey key = changedMods.isEmpty() && changedLibs.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    applyChanges();
+                    continue;
+                }
+                Path dir = watchedDirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                        continue;
+                    }
+                    handleEvent(dir, dir.resolve((Path) event.context()), event.kind());
+                }
+                if (!key.reset()) {
+                    watchedDirs.remove(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // 监视服务已关闭
+        }
+    }
+
+    private void handleEvent(Path dir, Path path, WatchEvent.Kind<?> kind) {
+        String name = path.getFileName().toString();
+        if (dir.equals(modsDir)) {
+            String lower = name.toLowerCase();
+            if (lower.endsWith(".zip")) {
+                changedMods.add(name.substring(0, name.length() - 4));
+            } else if (lower.endsWith(".py")) {
+                changedMods.add(name.substring(0, name.length() - 3));
+            }
+            return;
+        }
+
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+            try {
+                registerLibs(path);
+            } catch (IOException e) {
+                PyFabricLoader.LOGGER.warn("Failed to watch new lib directory {}", path, e);
+            }
+        }
+        // libs下的顶层模块或包名
+        Path relative = libsDir.relativize(path);
+        String topLevel = relative.getName(0).toString();
+        if (topLevel.endsWith(".py")) {
+            topLevel = topLevel.substring(0, topLevel.length() - 3);
+        } else if (relative.getNameCount() == 1 && !Files.isDirectory(path)) {
+            return;
+        }
+        if (!topLevel.startsWith(".") && !topLevel.equals("Lib")) {
+            changedLibs.add(topLevel);
+        }
+    }
+
+    private void applyChanges() {
+        Set<String> mods = new LinkedHashSet<>(changedMods);
+        if (!changedLibs.isEmpty()) {
+            PyFabricLoader.LOGGER.info("Libraries changed: {}", changedLibs);
+            manager.purgeModules(changedLibs);
+            for (String lib : changedLibs) {
+                mods.addAll(manager.findModsImporting(lib));
+            }
+        }
+        changedMods.clear();
+        changedLibs.clear();
+
+        if (mods.isEmpty()) {
+            return;
+        }
+        try {
+            // 与启动时相同的发现和筛选规则，依赖变化模组的模组一起按依赖顺序重新加载
+            List<String> reloaded = manager.hotReload(mods);
+            PyFabricLoader.LOGGER.info("Hot reloaded mods: {}", reloaded);
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.error("Error hot reloading mods: {}", mods, e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.gvsds.pyfabricloader;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+/**
+ * 模组加载计划
+ * 根据depends字段以及加载阶段（自定义顺序、优先匹配、普通模组、单文件模组）把候选模组分成若干批次，
+ * 同一批次内的模组互不依赖，可以并行加载；批次之间严格按顺序执行。
+ */
+public class ModLoadPlanner {
+    private final BiPredicate<String, String> versionCheck;
+    private final Map<String, ModCandidate> byId = new LinkedHashMap<>();
+    private final Map<String, Integer> levels = new HashMap<>();
+    private final Set<String> visiting = new HashSet<>();
+    private final Map<Integer, Integer> stageFloors = new HashMap<>();
+    private int currentFloor = 0;
+    private int maxLevel = -1;
+
+    /**
+     * @param versionCheck 版本约束检查 (约束表达式, 当前版本) -> 是否满足
+     */
+    public ModLoadPlanner(BiPredicate<String, String> versionCheck) {
+        this.versionCheck = versionCheck;
+    }
+
+    /**
+     * 计算加载批次
+     * 缺少依赖、依赖版本不满足或存在循环依赖的模组会被记录日志并排除在计划之外
+     * @param candidates 按串行加载顺序排列的候选模组
+     * @return 按顺序执行的批次，每个批次内保持原有的相对顺序
+     */
+    public List<List<ModCandidate>> plan(List<ModCandidate> candidates) {
+        for (ModCandidate candidate : candidates) {
+            if (byId.containsKey(candidate.getId())) {
+                PyFabricLoader.LOGGER.warn("Duplicate mod id {} ({}), keeping the first one",
+                        candidate.getId(), candidate.getFile().getName());
+                continue;
+            }
+            byId.put(candidate.getId(), candidate);
+        }
+
+        // 按阶段依次计算层级，后一个阶段的模组不早于前一阶段的所有模组
+        List<ModCandidate> ordered = new ArrayList<>(byId.values());
+        ordered.sort(Comparator.comparingInt(ModCandidate::getStage));
+        int stage = Integer.MIN_VALUE;
+        for (ModCandidate candidate : ordered) {
+            if (candidate.getStage() != stage) {
+                stage = candidate.getStage();
+                currentFloor = maxLevel + 1;
+                stageFloors.put(stage, currentFloor);
+            }
+            resolveLevel(candidate);
+        }
+
+        List<List<ModCandidate>> waves = new ArrayList<>();
+        for (int i = 0; i <= maxLevel; i++) {
+            waves.add(new ArrayList<>());
+        }
+        for (ModCandidate candidate : byId.values()) {
+            int level = levels.get(candidate.getId());
+            if (level >= 0) {
+                waves.get(level).add(candidate);
+            }
+        }
+        waves.removeIf(List::isEmpty);
+        return waves;
+    }
+
+    /**
+     * 递归计算模组所在的层级，失败时返回-1
+     */
+    private int resolveLevel(ModCandidate candidate) {
+        String id = candidate.getId();
+        Integer known = levels.get(id);
+        if (known != null) {
+            return known;
+        }
+        if (!visiting.add(id)) {
+            PyFabricLoader.LOGGER.error("Circular dependency detected involving mod {}, skipping", id);
+            return -1;
+        }
+
+        int level = stageFloors.getOrDefault(candidate.getStage(), currentFloor);
+        for (Map.Entry<String, String> dep : candidate.getDepends().entrySet()) {
+            ModCandidate dependency = byId.get(dep.getKey());
+            if (dependency == null) {
+                PyFabricLoader.LOGGER.error("Mod {} depends on {} which is not present, skipping", id, dep.getKey());
+                level = -1;
+                break;
+            }
+            if (dep.getValue() != null && !versionCheck.test(dep.getValue(), dependency.getVersion())) {
+                PyFabricLoader.LOGGER.error("Mod {} requires {} version {} but found {}, skipping",
+                        id, dep.getKey(), dep.getValue(), dependency.getVersion());
+                level = -1;
+                break;
+            }
+            int depLevel = resolveLevel(dependency);
+            if (depLevel < 0) {
+                PyFabricLoader.LOGGER.error("Mod {} depends on {} which cannot be loaded, skipping", id, dep.getKey());
+                level = -1;
+                break;
+            }
+            level = Math.max(level, depLevel + 1);
+        }
+
+        visiting.remove(id);
+        levels.put(id, level);
+        maxLevel = Math.max(maxLevel, level);
+        return level;
+    }
+}
@@ -0,0 +1,86 @@
+package com.gvsds.pyfabricloader;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线玩家索引
+ * 在玩家加入、重生和离开时更新，按名称（不区分大小写，与PlayerManager一致）和UUID查找都是O(1)，
+ * Python脚本按名称查找玩家时不需要遍历玩家列表。
+ * 索引可以从任意线程读取，只在服务器线程写入。
+ */
+public class OnlinePlayers {
+    private static final OnlinePlayers INSTANCE = new OnlinePlayers();
+
+    private final Map<String, ServerPlayerEntity> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, ServerPlayerEntity> byUuid = new ConcurrentHashMap<>();
+
+    private OnlinePlayers() {
+    }
+
+    public static OnlinePlayers getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 玩家加入或重生（重生时会创建新的玩家实体）
+     */
+    public void add(ServerPlayerEntity player) {
+        byName.put(key(player.getGameProfile().getName()), player);
+        byUuid.put(player.getUuid(), player);
+    }
+
+    /**
+     * 玩家离开，只在索引中仍是同一个实体时移除
+     */
+    public void remove(ServerPlayerEntity player) {
+        byName.remove(key(player.getGameProfile().getName()), player);
+        byUuid.remove(player.getUuid(), player);
+    }
+
+    /**
+     * 服务器停止时清空
+     */
+    public void clear() {
+        byName.clear();
+        byUuid.clear();
+    }
+
+    /**
+     * @return 玩家，不在线时返回null
+     */
+    public ServerPlayerEntity get(String name) {
+        return name != null ? byName.get(key(name)) : null;
+    }
+
+    /**
+     * @return 玩家，不在线时返回null
+     */
+    public ServerPlayerEntity get(UUID uuid) {
+        return uuid != null ? byUuid.get(uuid) : null;
+    }
+
+    /**
+     * 在线玩家名称列表
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(byUuid.size());
+        for (ServerPlayerEntity player : byUuid.values()) {
+            names.add(player.getGameProfile().getName());
+        }
+        return names;
+    }
+
+    public int size() {
+        return byUuid.size();
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,213 @@
+package com.gvsds.pyfabricloader;
+
+import net.minecraft.server.command.ServerCommandSource;
+import org.python.core.Py;
+import org.python.core.PyObject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.*;
+
+/**
+ * 把Python可调用对象转换为Java函数式接口
+ * 每种接口对应一个固定参数个数的适配类，调用时直接使用 __call__(a)、__call__(a, b) 等重载，
+ * 不经过参数数组和重载解析；参数和返回值的转换在适配器中固定，不在每次调用时查找。
+ * Python中可以通过 PyCallables.adapt(func, java.util.function.Consumer) 使用。
+ */
+public final class PyCallables {
+    private static final Map<Class<?>, Function<PyObject, Object>> FACTORIES = new HashMap<>();
+
+    static {
+        FACTORIES.put(Runnable.class, RunnableAdapter::new);
+        FACTORIES.put(Supplier.class, SupplierAdapter::new);
+        FACTORIES.put(Consumer.class, ConsumerAdapter::new);
+        FACTORIES.put(BiConsumer.class, BiConsumerAdapter::new);
+        FACTORIES.put(Function.class, FunctionAdapter::new);
+        FACTORIES.put(BiFunction.class, BiFunctionAdapter::new);
+        FACTORIES.put(Predicate.class, PredicateAdapter::new);
+        FACTORIES.put(IntSupplier.class, IntSupplierAdapter::new);
+        FACTORIES.put(BooleanSupplier.class, BooleanSupplierAdapter::new);
+        FACTORIES.put(CommandCallback.class, CommandCallbackAdapter::new);
+        FACTORIES.put(ArgumentCommandCallback.class, ArgumentCommandCallbackAdapter::new);
+        FACTORIES.put(TypedCommandCallback.class, TypedCommandCallbackAdapter::new);
+    }
+
+    private PyCallables() {
+    }
+
+    /**
+     * 无参数的命令回调，返回命令结果码
+     */
+    @FunctionalInterface
+    public interface CommandCallback {
+        int run(ServerCommandSource source);
+    }
+
+    /**
+     * 带一个参数的命令回调，返回命令结果码
+     */
+    @FunctionalInterface
+    public interface ArgumentCommandCallback {
+        int run(ServerCommandSource source, Object argument);
+    }
+
+    /**
+     * 带类型化参数的命令回调，参数按声明顺序展开传入Python函数
+     */
+    @FunctionalInterface
+    public interface TypedCommandCallback {
+        int run(ServerCommandSource source, Object[] arguments);
+    }
+
+    /**
+     * 把Python可调用对象转换为指定的接口
+     * @param callable Python函数、方法或其他可调用对象；已经实现该接口的Java对象原样返回
+     * @param type 目标接口
+     * @throws IllegalArgumentException 对象不可调用或接口不受支持时抛出
+     */
+    public static <T> T adapt(Object callable, Class<T> type) {
+        if (type.isInstance(callable) && !(callable instanceof PyObject)) {
+            return type.cast(callable);
+        }
+        Function<PyObject, Object> factory = FACTORIES.get(type);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unsupported callback interface: " + type.getName());
+        }
+        return type.cast(factory.apply(toCallable(callable)));
+    }
+
+    /**
+     * 解析为可调用的PyObject
+     */
+    public static PyObject toCallable(Object callable) {
+        if (callable instanceof Adapter) {
+            return ((Adapter) callable).callable;
+        }
+        PyObject object = callable instanceof PyObject ? (PyObject) callable : Py.java2py(callable);
+        if (object == null || !object.isCallable()) {
+            throw new IllegalArgumentException("Object is not callable: " + callable);
+        }
+        return object;
+    }
+
+    /**
+     * Java参数转换为Python对象，常见类型直接构造
+     */
+    static PyObject toPy(Object value) {
+        if (value == null) {
+            return Py.None;
+        }
+        if (value instanceof PyObject) {
+            return (PyObject) value;
+        }
+        if (value instanceof String) {
+            return Py.newUnicode((String) value);
+        }
+        if (value instanceof Integer) {
+            return Py.newInteger((Integer) value);
+        }
+        if (value instanceof Boolean) {
+            return Py.newBoolean((Boolean) value);
+        }
+        if (value instanceof Double) {
+            return Py.newFloat((Double) value);
+        }
+        return Py.java2py(value);
+    }
+
+    static Object toJava(PyObject result) {
+        return result == null || result == Py.None ? null : result.__tojava__(Object.class);
+    }
+
+    static int toInt(PyObject result, int defaultValue) {
+        if (result == null || result == Py.None) {
+            return defaultValue;
+        }
+        Object number = result.__tojava__(Number.class);
+        return number instanceof Number ? ((Number) number).intValue() : defaultValue;
+    }
+
+    private abstract static class Adapter {
+        protected final PyObject callable;
+
+        private Adapter(PyObject callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + callable + "]";
+        }
+    }
+
+    private static final class RunnableAdapter extends Adapter implements Runnable {
+        private RunnableAdapter(PyObject callable) { super(callable); }
+        @Override public void run() { callable.__call__(); }
+    }
+
+    private static final class SupplierAdapter extends Adapter implements Supplier<Object> {
+        private SupplierAdapter(PyObject callable) { super(callable); }
+        @Override public Object get() { return toJava(callable.__call__()); }
+    }
+
+    private static final class ConsumerAdapter extends Adapter implements Consumer<Object> {
+        private ConsumerAdapter(PyObject callable) { super(callable); }
+        @Override public void accept(Object value) { callable.__call__(toPy(value)); }
+    }
+
+    private static final class BiConsumerAdapter extends Adapter implements BiConsumer<Object, Object> {
+        private BiConsumerAdapter(PyObject callable) { super(callable); }
+        @Override public void accept(Object first, Object second) { callable.__call__(toPy(first), toPy(second)); }
+    }
+
+    private static final class FunctionAdapter extends Adapter implements Function<Object, Object> {
+        private FunctionAdapter(PyObject callable) { super(callable); }
+        @Override public Object apply(Object value) { return toJava(callable.__call__(toPy(value))); }
+    }
+
+    private static final class BiFunctionAdapter extends Adapter implements BiFunction<Object, Object, Object> {
+        private BiFunctionAdapter(PyObject callable) { super(callable); }
+        @Override public Object apply(Object first, Object second) { return toJava(callable.__call__(toPy(first), toPy(second))); }
+    }
+
+    private static final class PredicateAdapter extends Adapter implements Predicate<Object> {
+        private PredicateAdapter(PyObject callable) { super(callable); }
+        @Override public boolean test(Object value) { return callable.__call__(toPy(value)).__nonzero__(); }
+    }
+
+    private static final class IntSupplierAdapter extends Adapter implements IntSupplier {
+        private IntSupplierAdapter(PyObject callable) { super(callable); }
+        @Override public int getAsInt() { return toInt(callable.__call__(), 0); }
+    }
+
+    private static final class BooleanSupplierAdapter extends Adapter implements BooleanSupplier {
+        private BooleanSupplierAdapter(PyObject callable) { super(callable); }
+        @Override public boolean getAsBoolean() { return callable.__call__().__nonzero__(); }
+    }
+
+    /**
+     * 命令回调返回None或非数字时视为成功（1）
+     */
+    private static final class CommandCallbackAdapter extends Adapter implements CommandCallback {
+        private CommandCallbackAdapter(PyObject callable) { super(callable); }
+        @Override public int run(ServerCommandSource source) { return toInt(callable.__call__(Py.java2py(source)), 1); }
+    }
+
+    private static final class ArgumentCommandCallbackAdapter extends Adapter implements ArgumentCommandCallback {
+        private ArgumentCommandCallbackAdapter(PyObject callable) { super(callable); }
+        @Override public int run(ServerCommandSource source, Object argument) {
+            return toInt(callable.__call__(Py.java2py(source), toPy(argument)), 1);
+        }
+    }
+
+    private static final class TypedCommandCallbackAdapter extends Adapter implements TypedCommandCallback {
+        private TypedCommandCallbackAdapter(PyObject callable) { super(callable); }
+        @Override public int run(ServerCommandSource source, Object[] arguments) {
+            PyObject[] args = new PyObject[arguments.length + 1];
+            args[0] = Py.java2py(source);
+            for (int i = 0; i < arguments.length; i++) {
+                args[i + 1] = toPy(arguments[i]);
+            }
+            return toInt(callable.__call__(args), 1);
+        }
+    }
+}
@@ -1,21 +1,31 @@
 package com.gvsds.pyfabricloader;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.StringReader;
 import com.mojang.brigadier.arguments.ArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import com.mojang.brigadier.tree.CommandNode;
 import com.mojang.brigadier.tree.LiteralCommandNode;
+import com.mojang.brigadier.tree.RootCommandNode;
 import com.mojang.brigadier.tree.ArgumentCommandNode;
-import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.ServerTask;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
-import net.minecraft.text.Text;
+import net.minecraft.server.network.ServerPlayerEntity;
 
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
-import java.lang.reflect.Method;
-import org.python.util.PythonInterpreter;
 
 /**
  * Python Command API for PyFabricLoader
@@ -24,6 +34,16 @@ import org.python.util.PythonInterpreter;
  */
 public class PyCommandAPI {
     private static PyCommandAPI instance;
+    private final Map<String, CommandEntry> commandEntries = new ConcurrentHashMap<>();
+    private final Map<String, OwnedNode> ownedNodes = new ConcurrentHashMap<>();
+    // Nodes this registry added to the live dispatcher, guarded by dispatcherLock
+    private final Map<String, LiteralCommandNode<ServerCommandSource>> installedNodes = new java.util.HashMap<>();
+    private final Map<String, PythonSuggestionProvider> suggestionProviders = new ConcurrentHashMap<>();
+    private final AtomicBoolean resendPending = new AtomicBoolean();
+    private volatile CommandDispatcher<ServerCommandSource> liveDispatcher;
+    private final Object dispatcherLock = new Object();
+    private final java.util.List<Consumer<RootCommandNode<ServerCommandSource>>> pendingChanges = new java.util.ArrayList<>();
+    private volatile MinecraftServer server;
     
     private PyCommandAPI() {
         // Private constructor for singleton
@@ -44,18 +64,7 @@ public class PyCommandAPI {
      * @param callback The Python callback function to execute when the command is run
      */
     public void registerCommandWithStringArgument(String commandName, String argumentName, boolean isGreedy, Object callback) {
-        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
-            // Create the command node
-            LiteralCommandNode<ServerCommandSource> commandNode = CommandManager
-                .literal(commandName)
-                .then(CommandManager.argument(argumentName, isGreedy ? StringArgumentType.greedyString() : StringArgumentType.string())
-                    .executes(context -> executePythonCallback(context, callback, argumentName)))
-                .build();
-            
-            // Register the command
-            dispatcher.getRoot().addChild(commandNode);
-            PyFabricLoader.LOGGER.info("Registered command: /{}", commandName);
-        });
+        registerArgumentCommand(commandName, argumentName, isGreedy, callback, false);
     }
     
     /**
@@ -64,17 +73,395 @@ public class PyCommandAPI {
      * @param callback The Python callback function to execute when the command is run
      */
     public void registerSimpleCommand(String commandName, Object callback) {
-        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
-            // Create the command node
-            LiteralCommandNode<ServerCommandSource> commandNode = CommandManager
-                .literal(commandName)
-                .executes(context -> executePythonCallback(context, callback, null))
-                .build();
-            
-            // Register the command
-            dispatcher.getRoot().addChild(commandNode);
-            PyFabricLoader.LOGGER.info("Registered command: /{}", commandName);
+        registerNoArgumentCommand(commandName, callback, false);
+    }
+    
+    /**
+     * Register a command with a string argument whose callback runs off the server thread.
+     * The command returns immediately; failures and timeouts are reported to the source.
+     * Use runOnServerThread for anything that changes game state.
+     * @param commandName The name of the command
+     * @param argumentName The name of the argument
+     * @param isGreedy Whether the argument should consume all remaining input
+     * @param callback The Python callback function to execute when the command is run
+     */
+    public void registerAsyncCommandWithStringArgument(String commandName, String argumentName, boolean isGreedy, Object callback) {
+        registerArgumentCommand(commandName, argumentName, isGreedy, callback, true);
+    }
+    
+    /**
+     * Register a command without arguments whose callback runs off the server thread
+     * @param commandName The name of the command
+     * @param callback The Python callback function to execute when the command is run
+     */
+    public void registerAsyncCommand(String commandName, Object callback) {
+        registerNoArgumentCommand(commandName, callback, true);
+    }
+    
+    /**
+     * Register a command with typed arguments parsed by Brigadier.
+     * The spec lists "name:type" pairs separated by spaces, for example "target:player amount:int reason:greedy?".
+     * Supported types are int, double, bool, word, string, greedy, player, players, entity, entities and blockpos;
+     * a trailing "?" marks an optional argument. The callback receives the source followed by one typed value
+     * per argument, with None for optional arguments that were left out.
+     * @param commandName The name of the command
+     * @param spec The argument spec, as a string or a list of "name:type" strings or [name, type] pairs
+     * @param callback The Python callback function to execute when the command is run
+     */
+    public void registerTypedCommand(String commandName, Object spec, Object callback) {
+        registerTypedCommand(commandName, spec, 0, callback);
+    }
+    
+    /**
+     * Register a command with typed arguments that requires a permission level
+     * @param commandName The name of the command
+     * @param spec The argument spec, see registerTypedCommand
+     * @param permissionLevel The permission level required to see and run the command (0-4)
+     * @param callback The Python callback function to execute when the command is run
+     */
+    public void registerTypedCommand(String commandName, Object spec, int permissionLevel, Object callback) {
+        registerTypedCommand(commandName, spec, permissionLevel, callback, false);
+    }
+    
+    /**
+     * Register a command with typed arguments whose callback runs off the server thread.
+     * Arguments are still parsed on the server thread before the callback is submitted.
+     * @param commandName The name of the command
+     * @param spec The argument spec, see registerTypedCommand
+     * @param permissionLevel The permission level required to see and run the command (0-4)
+     * @param callback The Python callback function to execute when the command is run
+     */
+    public void registerAsyncTypedCommand(String commandName, Object spec, int permissionLevel, Object callback) {
+        registerTypedCommand(commandName, spec, permissionLevel, callback, true);
+    }
+    
+    private void registerTypedCommand(String commandName, Object spec, int permissionLevel, Object callback, boolean async) {
+        CommandArgumentSpec arguments = CommandArgumentSpec.parse(spec);
+        CommandEntry entry = new CommandEntry(commandName, PythonManager.getExecutingModId(), null, null,
+            PyCallables.adapt(callback, PyCallables.TypedCommandCallback.class), null, false, arguments, permissionLevel, async);
+        commandEntries.put(commandName, entry);
+        registerNode(commandName, entry.modId, () -> arguments
+            .build(commandName, permissionLevel, argumentName -> getSuggestionProvider(commandName, argumentName),
+                (context, values) -> invokePythonCallback(context.getSource(), entry, values))
+            .build());
+    }
+    
+    private void registerArgumentCommand(String commandName, String argumentName, boolean isGreedy, Object callback, boolean async) {
+        CommandEntry entry = new CommandEntry(commandName, PythonManager.getExecutingModId(), null,
+            PyCallables.adapt(callback, PyCallables.ArgumentCommandCallback.class), null, argumentName, isGreedy, null, 0, async);
+        commandEntries.put(commandName, entry);
+        registerNode(commandName, entry.modId, () -> CommandManager
+            .literal(commandName)
+            .then(CommandManager.argument(argumentName, isGreedy ? StringArgumentType.greedyString() : StringArgumentType.string())
+                .suggests(getSuggestionProvider(commandName, argumentName))
+                .executes(context -> executePythonCallback(context, entry)))
+            .build());
+    }
+    
+    private void registerNoArgumentCommand(String commandName, Object callback, boolean async) {
+        CommandEntry entry = new CommandEntry(commandName, PythonManager.getExecutingModId(),
+            PyCallables.adapt(callback, PyCallables.CommandCallback.class), null, null, null, false, null, 0, async);
+        commandEntries.put(commandName, entry);
+        registerNode(commandName, entry.modId, () -> CommandManager
+            .literal(commandName)
+            .executes(context -> executePythonCallback(context, entry))
+            .build());
+    }
+    
+    /**
+     * Offer tab-completion for an argument of a Python command.
+     * The function is called as function(source, prefix) off the server thread and returns a list of strings;
+     * candidates not matching the typed prefix are filtered out. Results are cached per player and prefix for
+     * Commands.SuggestionTtlMs. May be called before or after the command is registered.
+     * @param commandName The name of the command
+     * @param argumentName The name of the argument to complete
+     * @param function The Python suggestion function
+     */
+    public void registerSuggestions(String commandName, String argumentName, Object function) {
+        suggestionProviders.put(suggestionKey(commandName, argumentName),
+            new PythonSuggestionProvider(PythonManager.getExecutingModId(), function));
+        OwnedNode owned = ownedNodes.get(commandName);
+        if (owned != null) {
+            // Rebuild the node so the argument picks up the provider
+            updateDispatcher(root -> installNode(root, owned.nodeFactory.get()));
+        }
+    }
+    
+    private SuggestionProvider<ServerCommandSource> getSuggestionProvider(String commandName, String argumentName) {
+        return suggestionProviders.get(suggestionKey(commandName, argumentName));
+    }
+    
+    private static String suggestionKey(String commandName, String argumentName) {
+        return commandName + " " + argumentName;
+    }
+    
+    /**
+     * Run a handler on the server thread at the start of every server tick.
+     * Handlers share their mod's per-tick budget (info.json "tick-budget-ms", otherwise Ticks.BudgetMs);
+     * once it is used up, the mod's remaining handlers are deferred to the next tick.
+     * @param handler A Runnable or a Python callable without arguments
+     * @return A subscription whose cancel() stops the handler
+     */
+    public TickEventBus.Subscription onTickStart(Object handler) {
+        return TickEventBus.getInstance().subscribe(PythonManager.getExecutingModId(), TickEventBus.Phase.START,
+            PyCallables.adapt(handler, Runnable.class));
+    }
+    
+    /**
+     * Run a handler on the server thread at the end of every server tick, see onTickStart
+     * @param handler A Runnable or a Python callable without arguments
+     * @return A subscription whose cancel() stops the handler
+     */
+    public TickEventBus.Subscription onTickEnd(Object handler) {
+        return TickEventBus.getInstance().subscribe(PythonManager.getExecutingModId(), TickEventBus.Phase.END,
+            PyCallables.adapt(handler, Runnable.class));
+    }
+    
+    /**
+     * Run a task on the server thread. Runs it immediately when already on the server thread
+     * or when no server is running.
+     * @param task A Runnable or a Python callable without arguments
+     */
+    public void runOnServerThread(Object task) {
+        Runnable runnable = PyCallables.adapt(task, Runnable.class);
+        MinecraftServer currentServer = server;
+        if (currentServer == null || currentServer.isOnThread()) {
+            runnable.run();
+        } else {
+            currentServer.execute(runnable);
+        }
+    }
+    
+    /**
+     * Run a task on the server thread and wait for its result, for reading game state from async commands
+     * @param task A Supplier or a Python callable without arguments
+     * @return The task's result
+     */
+    public Object callOnServerThread(Object task) {
+        java.util.function.Supplier<?> supplier = PyCallables.adapt(task, java.util.function.Supplier.class);
+        MinecraftServer currentServer = server;
+        if (currentServer == null || currentServer.isOnThread()) {
+            return supplier.get();
+        }
+        return currentServer.submit(supplier).join();
+    }
+    
+    /**
+     * Whether the caller must hand game-state changes to the server thread
+     */
+    private boolean isOffServerThread() {
+        MinecraftServer currentServer = server;
+        return currentServer != null && !currentServer.isOnThread();
+    }
+    
+    /**
+     * Register a placeholder for a command declared in a dormant or still loading mod's info.json.
+     * Invocations activate a dormant mod, or report that the mod is still loading, and otherwise
+     * forward to the callback the mod registered. Registering the same placeholder twice has no effect.
+     * @param commandName The name of the command
+     * @param modId The mod that declares the command
+     */
+    public void registerPlaceholderCommand(String commandName, String modId) {
+        registerPlaceholderCommand(commandName, modId, 0);
+    }
+    
+    /**
+     * Register a placeholder that requires the permission level the command is declared with
+     * @param permissionLevel The permission level required to see and run the command (0-4)
+     */
+    public void registerPlaceholderCommand(String commandName, String modId, int permissionLevel) {
+        if (ownedNodes.containsKey(commandName)) {
+            return;
+        }
+        registerNode(commandName, modId, () -> CommandManager
+            .literal(commandName)
+            .requires(source -> permissionLevel <= 0 || source.hasPermissionLevel(permissionLevel))
+            .executes(context -> executePlaceholder(context, commandName, modId, null))
+            .then(CommandManager.argument("args", StringArgumentType.greedyString())
+                .executes(context -> executePlaceholder(context, commandName, modId, StringArgumentType.getString(context, "args"))))
+            .build());
+    }
+    
+    /**
+     * Record a command node as owned by a mod and install it on the live dispatcher if the server
+     * has already built one (mods loaded in the background or reloaded at runtime).
+     * A node registered under an existing name replaces the old one, including a placeholder.
+     */
+    private void registerNode(String commandName, String modId, Supplier<LiteralCommandNode<ServerCommandSource>> nodeFactory) {
+        ownedNodes.put(commandName, new OwnedNode(modId, nodeFactory));
+        updateDispatcher(root -> installNode(root, nodeFactory.get()));
+        PyFabricLoader.LOGGER.info("Registered command: /{}", commandName);
+    }
+    
+    /**
+     * Remove every command a mod registered, from the registry and from the live dispatcher.
+     * Called when the mod is unloaded; players get the updated command tree once afterwards.
+     * @param modId The mod whose commands to remove
+     */
+    public void unregisterMod(String modId) {
+        if (modId == null) {
+            return;
+        }
+        java.util.List<String> removed = new java.util.ArrayList<>();
+        ownedNodes.entrySet().removeIf(owned -> {
+            if (modId.equals(owned.getValue().modId)) {
+                removed.add(owned.getKey());
+                return true;
+            }
+            return false;
         });
+        commandEntries.values().removeIf(entry -> modId.equals(entry.modId));
+        CommandStats.getInstance().removeMod(modId);
+        suggestionProviders.values().removeIf(provider -> modId.equals(provider.getModId()));
+        if (removed.isEmpty()) {
+            return;
+        }
+        updateDispatcher(root -> removed.forEach(name -> uninstallNode(root, name)));
+        PyFabricLoader.LOGGER.info("Unregistered commands of {}: {}", modId, removed);
+    }
+    
+    /**
+     * Apply a change to the live dispatcher's root on the server thread and schedule a command tree resend.
+     * Changes made before the server thread is known (mods loaded by the background init thread) are queued
+     * and applied when the server is set; the root is never modified from any other thread.
+     */
+    private void updateDispatcher(Consumer<RootCommandNode<ServerCommandSource>> change) {
+        synchronized (dispatcherLock) {
+            CommandDispatcher<ServerCommandSource> dispatcher = liveDispatcher;
+            if (dispatcher == null) {
+                // attachDispatcher installs everything in the registry
+                return;
+            }
+            MinecraftServer currentServer = server;
+            if (currentServer == null) {
+                pendingChanges.add(change);
+                return;
+            }
+            if (currentServer.isOnThread()) {
+                change.accept(dispatcher.getRoot());
+                scheduleResend();
+                return;
+            }
+            currentServer.execute(() -> applyIfCurrent(dispatcher, change));
+        }
+    }
+    
+    /**
+     * Apply a queued change unless the dispatcher was replaced meanwhile; a new dispatcher is built from the registry
+     */
+    private void applyIfCurrent(CommandDispatcher<ServerCommandSource> dispatcher, Consumer<RootCommandNode<ServerCommandSource>> change) {
+        synchronized (dispatcherLock) {
+            if (liveDispatcher != dispatcher) {
+                return;
+            }
+            change.accept(dispatcher.getRoot());
+        }
+        scheduleResend();
+    }
+    
+    /**
+     * Add a node, replacing the node this registry installed under the same name instead of merging into it.
+     * A name already taken by a vanilla or other mod's command is left alone and the node is not installed.
+     */
+    private void installNode(RootCommandNode<ServerCommandSource> root, LiteralCommandNode<ServerCommandSource> node) {
+        String name = node.getName();
+        CommandNode<ServerCommandSource> existing = root.getChild(name);
+        LiteralCommandNode<ServerCommandSource> installed = installedNodes.get(name);
+        if (existing != null && existing != installed) {
+            OwnedNode owned = ownedNodes.get(name);
+            PyFabricLoader.LOGGER.warn("Command /{} from {} clashes with a command not registered by PyFabricLoader, skipping it",
+                name, owned != null ? owned.modId : "unknown mod");
+            return;
+        }
+        if (installed != null) {
+            CommandNodes.remove(root, installed);
+        }
+        root.addChild(node);
+        installedNodes.put(name, node);
+    }
+    
+    /**
+     * Remove the node this registry installed under a name, never a node it did not add
+     */
+    private void uninstallNode(RootCommandNode<ServerCommandSource> root, String name) {
+        LiteralCommandNode<ServerCommandSource> installed = installedNodes.remove(name);
+        if (installed != null) {
+            CommandNodes.remove(root, installed);
+        }
+    }
+    
+    /**
+     * Attach the dispatcher the server is using and install every owned command on it.
+     * Called from the single command registration callback, so commands survive /reload.
+     */
+    public void attachDispatcher(CommandDispatcher<ServerCommandSource> dispatcher) {
+        // Publishing and installing under one lock: a node registered concurrently is either seen here
+        // or applied by updateDispatcher once the lock is released
+        synchronized (dispatcherLock) {
+            this.liveDispatcher = dispatcher;
+            pendingChanges.clear();
+            installedNodes.clear();
+            for (OwnedNode owned : ownedNodes.values()) {
+                installNode(dispatcher.getRoot(), owned.nodeFactory.get());
+            }
+        }
+    }
+    
+    /**
+     * Track the running server, null once it has stopped
+     */
+    public void setServer(MinecraftServer server) {
+        synchronized (dispatcherLock) {
+            this.server = server;
+            if (server == null) {
+                this.liveDispatcher = null;
+                this.pendingChanges.clear();
+                this.installedNodes.clear();
+                this.resendPending.set(false);
+                return;
+            }
+            if (liveDispatcher == null || pendingChanges.isEmpty()) {
+                return;
+            }
+            // Changes queued by the background init thread before the server thread existed
+            CommandDispatcher<ServerCommandSource> dispatcher = liveDispatcher;
+            java.util.List<Consumer<RootCommandNode<ServerCommandSource>>> queued = new java.util.ArrayList<>(pendingChanges);
+            pendingChanges.clear();
+            server.execute(() -> queued.forEach(change -> applyIfCurrent(dispatcher, change)));
+        }
+    }
+    
+    /**
+     * Get the running server captured from the lifecycle events
+     * @return The server, or null when no server is running
+     */
+    public MinecraftServer getServer() {
+        return server;
+    }
+    
+    /**
+     * Send the command tree again to every online player so commands added after they joined show up
+     */
+    public void resendCommandTrees() {
+        scheduleResend();
+    }
+    
+    /**
+     * Queue one command tree resend behind all pending dispatcher changes. Further requests before it
+     * runs are folded into it, so a reload that touches many commands resends the tree once.
+     */
+    private void scheduleResend() {
+        MinecraftServer currentServer = server;
+        if (currentServer == null || !resendPending.compareAndSet(false, true)) {
+            return;
+        }
+        // execute() would run immediately on the server thread, so queue the task explicitly
+        currentServer.send(new ServerTask(currentServer.getTicks(), () -> {
+            resendPending.set(false);
+            for (ServerPlayerEntity player : currentServer.getPlayerManager().getPlayerList()) {
+                currentServer.getCommandManager().sendCommandTree(player);
+            }
+        }));
     }
     
     /**
@@ -86,25 +473,89 @@ public class PyCommandAPI {
      * @param fadeOut Fade out time in ticks
      */
     public void showTitle(Object player, String message, int fadeIn, int stay, int fadeOut) {
+        broadcastTitle(player, message, null, fadeIn, stay, fadeOut);
+    }
+    
+    /**
+     * Display a title and subtitle to many players at once.
+     * The packets are built once and sent to every target in a single loop on the server thread.
+     * @param targets null or "@a" for everyone online, a player, a player name, an entity selector
+     *                such as "@a[distance=..10]", or a list of players and names
+     * @param title The title message
+     * @param subtitle The subtitle message, or null for none
+     * @param fadeIn Fade in time in ticks
+     * @param stay Stay time in ticks
+     * @param fadeOut Fade out time in ticks
+     */
+    public void broadcastTitle(Object targets, String title, String subtitle, int fadeIn, int stay, int fadeOut) {
+        if (isOffServerThread()) {
+            runOnServerThread((Runnable) () -> broadcastTitle(targets, title, subtitle, fadeIn, stay, fadeOut));
+            return;
+        }
         try {
-            if (player != null && player instanceof net.minecraft.server.network.ServerPlayerEntity) {
-                net.minecraft.server.network.ServerPlayerEntity serverPlayer = (net.minecraft.server.network.ServerPlayerEntity) player;
-                Text titleText = Text.literal(message);
-                
-                // In newer Minecraft versions, use PlayerEntity's sendMessage with title action
-                // Create title component with fade in, stay, fade out parameters
-                serverPlayer.sendMessage(titleText, true);
-                
-                // Alternative approach: Use ServerPlayNetworkHandler to send title packet
-                // This is a simplified version that sends a chat message instead
-                // For full title functionality, packet handling would be needed
-                PyFabricLoader.LOGGER.info("Sent title message to player: {}", message);
-            }
+            VersionAdapter.sendTitle(resolvePlayers(targets), title, subtitle, fadeIn, stay, fadeOut);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Error showing title: {}", e.getMessage(), e);
         }
     }
     
+    /**
+     * Send a chat message to many players at once
+     * @param targets The players to message, in any form accepted by broadcastTitle
+     * @param message The message to send
+     */
+    public void broadcastMessage(Object targets, String message) {
+        if (isOffServerThread()) {
+            runOnServerThread((Runnable) () -> broadcastMessage(targets, message));
+            return;
+        }
+        try {
+            VersionAdapter.sendMessage(resolvePlayers(targets), message);
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.error("Error broadcasting message: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Resolve a target description into online players
+     */
+    private java.util.List<ServerPlayerEntity> resolvePlayers(Object targets) {
+        MinecraftServer currentServer = server;
+        if (currentServer == null) {
+            return java.util.Collections.emptyList();
+        }
+        if (targets == null || "@a".equals(targets)) {
+            return currentServer.getPlayerManager().getPlayerList();
+        }
+        java.util.List<ServerPlayerEntity> players = new java.util.ArrayList<>();
+        addPlayers(currentServer, targets, players);
+        return players;
+    }
+    
+    private void addPlayers(MinecraftServer currentServer, Object target, java.util.List<ServerPlayerEntity> players) {
+        if (target instanceof ServerPlayerEntity) {
+            players.add((ServerPlayerEntity) target);
+        } else if (target instanceof String && ((String) target).startsWith("@")) {
+            try {
+                players.addAll(EntityArgumentType.players().parse(new StringReader((String) target))
+                        .getPlayers(currentServer.getCommandSource()));
+            } catch (CommandSyntaxException e) {
+                PyFabricLoader.LOGGER.warn("Invalid player selector {}: {}", target, e.getMessage());
+            }
+        } else if (target instanceof String) {
+            ServerPlayerEntity player = OnlinePlayers.getInstance().get((String) target);
+            if (player != null) {
+                players.add(player);
+            }
+        } else if (target instanceof Iterable) {
+            for (Object element : (Iterable<?>) target) {
+                addPlayers(currentServer, element, players);
+            }
+        } else if (target != null) {
+            PyFabricLoader.LOGGER.warn("Unsupported player target: {}", target);
+        }
+    }
+    
     /**
      * Display a title to a player by name
      * @param playerName The name of the player to display the title to
@@ -116,74 +567,12 @@ public class PyCommandAPI {
      */
     public boolean showTitleByPlayerName(String playerName, String message, int fadeIn, int stay, int fadeOut) {
         try {
-            // Get the server instance through reflection to avoid direct dependency on specific methods
-            net.minecraft.server.MinecraftServer server = null;
-            
-            // Try multiple reflection approaches to get the server instance
-            try {
-                // Try getting server through FabricLoader
-                Class<?> loaderClass = Class.forName("net.fabricmc.loader.api.FabricLoader");
-                java.lang.reflect.Method getInstanceMethod = loaderClass.getMethod("getInstance");
-                Object fabricLoader = getInstanceMethod.invoke(null);
-                
-                // Try to get server instance through Loader's game instance
-                try {
-                    java.lang.reflect.Method getGameInstanceMethod = loaderClass.getMethod("getGameInstance");
-                    Object gameInstance = getGameInstanceMethod.invoke(fabricLoader);
-                    if (gameInstance instanceof net.minecraft.server.MinecraftServer) {
-                        server = (net.minecraft.server.MinecraftServer) gameInstance;
-                    }
-                } catch (NoSuchMethodException e) {
-                    PyFabricLoader.LOGGER.warn("getGameInstance method not found: {}", e.getMessage());
-                }
-            } catch (Exception e) {
-                PyFabricLoader.LOGGER.warn("Could not get server through FabricLoader: {}", e.getMessage());
-            }
-            
-            // Alternative approach: Try to get server from MinecraftServer class
-            if (server == null) {
-                try {
-                    Class<?> serverClass = Class.forName("net.minecraft.server.MinecraftServer");
-                    // Try various possible methods
-                    String[] possibleMethods = {"getServer", "getCurrentServer", "getInstance"};
-                    
-                    for (String methodName : possibleMethods) {
-                        try {
-                            java.lang.reflect.Method method = serverClass.getMethod(methodName);
-                            Object serverObj = method.invoke(null);
-                            if (serverObj instanceof net.minecraft.server.MinecraftServer) {
-                                server = (net.minecraft.server.MinecraftServer) serverObj;
-                                break;
-                            }
-                        } catch (NoSuchMethodException ignored) {
-                            // Method not found, try next one
-                        }
-                    }
-                } catch (Exception e) {
-                    PyFabricLoader.LOGGER.warn("Could not get server instance through reflection: {}", e.getMessage());
-                }
-            }
-            
-            // If we have a server and player name, try to find the player
-            if (server != null && playerName != null) {
-                try {
-                    // Get the player manager
-                    net.minecraft.server.PlayerManager playerManager = server.getPlayerManager();
-                    if (playerManager != null) {
-                        // Get player by name
-                        net.minecraft.server.network.ServerPlayerEntity player = playerManager.getPlayer(playerName);
-                        if (player != null) {
-                            // Use existing showTitle method to display the title
-                            showTitle(player, message, fadeIn, stay, fadeOut);
-                            return true;
-                        } else {
-                            PyFabricLoader.LOGGER.warn("Player not found: {}", playerName);
-                        }
-                    }
-                } catch (Exception e) {
-                    PyFabricLoader.LOGGER.error("Error accessing player manager: {}", e.getMessage(), e);
-                }
+            ServerPlayerEntity player = VersionAdapter.findPlayer(playerName);
+            if (player != null) {
+                showTitle(player, message, fadeIn, stay, fadeOut);
+                return true;
             }
+            PyFabricLoader.LOGGER.warn("Player not found: {}", playerName);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Error in showTitleByPlayerName: {}", e.getMessage(), e);
         }
@@ -197,31 +586,12 @@ public class PyCommandAPI {
      * @param broadcast Whether to broadcast to all operators
      */
     public void sendFeedback(Object source, String message, boolean broadcast) {
-        try {
-            if (source != null && source instanceof ServerCommandSource) {
-                ServerCommandSource commandSource = (ServerCommandSource) source;
-                Text textMessage = Text.literal(message);
-                
-                try {
-                // Try to use the method directly with Text parameter first (1.18.x)
-                commandSource.getClass().getMethod("sendFeedback", Text.class, boolean.class)
-                    .invoke(commandSource, textMessage, broadcast);
-            } catch (NoSuchMethodException e) {
-                // If that fails, try with Supplier parameter (1.19+)
-                try {
-                    // 先创建Supplier对象再传递给反射调用
-                    java.util.function.Supplier<Text> textSupplier = () -> textMessage;
-                    commandSource.getClass().getMethod("sendFeedback", java.util.function.Supplier.class, boolean.class)
-                        .invoke(commandSource, textSupplier, broadcast);
-                } catch (Exception ex) {
-                    PyFabricLoader.LOGGER.error("Failed to send feedback: {}", ex.getMessage());
-                }
-            } catch (Exception e) {
-                PyFabricLoader.LOGGER.error("Failed to send feedback: {}", e.getMessage());
-            }
-            }
-        } catch (Exception e) {
-            PyFabricLoader.LOGGER.error("Error sending feedback: {}", e.getMessage(), e);
+        if (isOffServerThread()) {
+            runOnServerThread((Runnable) () -> sendFeedback(source, message, broadcast));
+            return;
+        }
+        if (source instanceof ServerCommandSource) {
+            VersionAdapter.sendFeedback((ServerCommandSource) source, message, broadcast);
         }
     }
     
@@ -231,18 +601,13 @@ public class PyCommandAPI {
      * @param message The error message to send
      */
     public void sendError(Object source, String message) {
+        if (isOffServerThread()) {
+            runOnServerThread((Runnable) () -> sendError(source, message));
+            return;
+        }
         try {
-            if (source != null && source instanceof ServerCommandSource) {
-                ServerCommandSource commandSource = (ServerCommandSource) source;
-                Text textMessage = Text.literal(message);
-                
-                //#if MC>=11900
-                // 1.19+版本使用函数式接口参数
-                commandSource.sendError(textMessage);
-                //#else
-                // 1.18.x版本直接使用Text参数
-                commandSource.sendError(textMessage);
-                //#endif
+            if (source instanceof ServerCommandSource) {
+                VersionAdapter.sendError((ServerCommandSource) source, message);
             }
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Error sending error message: {}", e.getMessage(), e);
@@ -273,158 +638,191 @@ public class PyCommandAPI {
      */
     public Object getPlayerByName(String playerName) {
         try {
-            // Get the server instance through reflection to avoid direct dependency
-            net.minecraft.server.MinecraftServer server = null;
-            
-            // Try multiple reflection approaches to get the server instance
-            try {
-                // Try getting server through FabricLoader
-                Class<?> loaderClass = Class.forName("net.fabricmc.loader.api.FabricLoader");
-                java.lang.reflect.Method getInstanceMethod = loaderClass.getMethod("getInstance");
-                Object fabricLoader = getInstanceMethod.invoke(null);
-                
-                // Try to get server instance through Loader's game instance
-                try {
-                    java.lang.reflect.Method getGameInstanceMethod = loaderClass.getMethod("getGameInstance");
-                    Object gameInstance = getGameInstanceMethod.invoke(fabricLoader);
-                    if (gameInstance instanceof net.minecraft.server.MinecraftServer) {
-                        server = (net.minecraft.server.MinecraftServer) gameInstance;
-                    }
-                } catch (NoSuchMethodException e) {
-                    // Method not found, continue
-                }
-            } catch (Exception e) {
-                // Continue with other methods
-            }
-            
-            // Alternative approach: Try to get server from MinecraftServer class
-            if (server == null) {
-                try {
-                    Class<?> serverClass = Class.forName("net.minecraft.server.MinecraftServer");
-                    // Try various possible methods
-                    String[] possibleMethods = {"getServer", "getCurrentServer", "getInstance"};
-                    
-                    for (String methodName : possibleMethods) {
-                        try {
-                            java.lang.reflect.Method method = serverClass.getMethod(methodName);
-                            Object serverObj = method.invoke(null);
-                            if (serverObj instanceof net.minecraft.server.MinecraftServer) {
-                                server = (net.minecraft.server.MinecraftServer) serverObj;
-                                break;
-                            }
-                        } catch (NoSuchMethodException ignored) {
-                            // Method not found, try next one
-                        }
-                    }
-                } catch (Exception e) {
-                    // Continue
-                }
-            }
-            
-            if (server != null && playerName != null) {
-                try {
-                    // Get the player manager
-                    net.minecraft.server.PlayerManager playerManager = server.getPlayerManager();
-                    if (playerManager != null) {
-                        // Get player by name
-                        return playerManager.getPlayer(playerName);
-                    }
-                } catch (Exception e) {
-                    PyFabricLoader.LOGGER.error("Error accessing player manager: {}", e.getMessage(), e);
-                }
-            }
+            return VersionAdapter.findPlayer(playerName);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Error getting player by name: {}", e.getMessage(), e);
         }
         return null;
     }
     
+    /**
+     * Get a player by UUID
+     * @param uuid The UUID of the player, as a java.util.UUID or its string form
+     * @return The player object or null if not online
+     */
+    public Object getPlayerByUuid(Object uuid) {
+        try {
+            UUID id = uuid instanceof UUID ? (UUID) uuid : UUID.fromString(String.valueOf(uuid));
+            return OnlinePlayers.getInstance().get(id);
+        } catch (IllegalArgumentException e) {
+            PyFabricLoader.LOGGER.warn("Invalid player UUID: {}", uuid);
+        }
+        return null;
+    }
+    
+    /**
+     * Get the names of all online players
+     * @return The player names
+     */
+    public java.util.List<String> getOnlinePlayerNames() {
+        return OnlinePlayers.getInstance().getNames();
+    }
+    
+    /**
+     * Activate a dormant mod and forward the placeholder invocation to the real callback,
+     * or hold the command back while the mod is still loading in the background
+     */
+    private int executePlaceholder(CommandContext<ServerCommandSource> context, String commandName, String modId, String arguments) {
+        ServerCommandSource source = context.getSource();
+        if (PythonManager.getInstance().getModState(modId) == PythonManager.PyModInfo.State.LOADING) {
+            sendError(source, translate("messages.placeholder.loading", modId));
+            return 0;
+        }
+        if (!PythonManager.getInstance().activateMod(modId)) {
+            sendError(source, translate("messages.placeholder.activation_failed", modId));
+            return 0;
+        }
+        CommandEntry entry = commandEntries.get(commandName);
+        if (entry == null) {
+            sendError(source, translate("messages.placeholder.not_registered", modId, commandName));
+            return 0;
+        }
+        if (entry.permissionLevel > 0 && !source.hasPermissionLevel(entry.permissionLevel)) {
+            sendError(source, translate("messages.placeholder.no_permission", commandName));
+            return 0;
+        }
+        // The placeholder captures everything as one greedy string; only forward it when the real command
+        // takes exactly that. Typed and non-greedy arguments need the real command node to parse them.
+        boolean sameShape = entry.arguments == null
+            && (entry.argumentName == null ? arguments == null : entry.greedy && arguments != null);
+        if (!sameShape) {
+            String usage = entry.arguments != null ? " " + entry.arguments.usage()
+                : entry.argumentName != null ? " <" + entry.argumentName + ">" : "";
+            sendError(source, translate("messages.placeholder.run_again", modId, commandName + usage));
+            return 0;
+        }
+        return invokePythonCallback(source, entry, arguments);
+    }
+    
+    /**
+     * Look up a message in the configured language
+     */
+    private static String translate(String key, Object... args) {
+        return ConfigManager.getInstance().getTranslation(key, args);
+    }
+    
     /**
      * Execute a Python callback function when a command is run
      */
-    private int executePythonCallback(CommandContext<ServerCommandSource> context, Object callback, String argumentName) {
+    private int executePythonCallback(CommandContext<ServerCommandSource> context, CommandEntry entry) {
+        // Get the argument value if specified
+        Object argumentValue = null;
+        if (entry.argumentName != null) {
+            argumentValue = StringArgumentType.getString(context, entry.argumentName);
+        }
+        return invokePythonCallback(context.getSource(), entry, argumentValue);
+    }
+    
+    private int invokePythonCallback(ServerCommandSource source, CommandEntry entry, Object argumentValue) {
+        if (commandEntries.get(entry.commandName) != entry) {
+            // A node that outlived its mod, e.g. when it could not be removed from the dispatcher
+            sendError(source, "Command /" + entry.commandName + " is no longer available");
+            return 0;
+        }
+        if (entry.async) {
+            AsyncCommandExecutor.getInstance().submit(entry.commandName,
+                () -> timedCallback(source, entry, argumentValue),
+                message -> sendError(source, message));
+            return 1;
+        }
         try {
-            // Get the command source
-            ServerCommandSource source = context.getSource();
-            
-            // Get the argument value if specified
-            Object argumentValue = null;
-            if (argumentName != null) {
-                argumentValue = StringArgumentType.getString(context, argumentName);
-            }
-            
-            // Call the Python callback function using Jython's PyObject interface
-            // This is the most reliable way to call Python functions from Java
-            Object result = null;
-            
-            // Import Jython PyObject class dynamically to avoid direct dependency issues
-            try {
-                // Try direct approach first - for Jython 2.x compatibility
-                if (argumentName != null) {
-                    // With argument - use PythonInterpreter's call helper method
-                    // Create a new PythonInterpreter instance for this call
-                    org.python.util.PythonInterpreter interpreter = new org.python.util.PythonInterpreter();
-                    try {
-                        // Use exec to call the function with arguments
-                        interpreter.set("__callback", callback);
-                        interpreter.set("__source", source);
-                        interpreter.set("__arg", argumentValue);
-                        interpreter.exec("__result = __callback(__source, __arg)");
-                        result = interpreter.get("__result");
-                    } finally {
-                        interpreter.cleanup();
-                    }
-                } else {
-                    // Without argument
-                    org.python.util.PythonInterpreter interpreter = new org.python.util.PythonInterpreter();
-                    try {
-                        interpreter.set("__callback", callback);
-                        interpreter.set("__source", source);
-                        interpreter.exec("__result = __callback(__source)");
-                        result = interpreter.get("__result");
-                    } finally {
-                        interpreter.cleanup();
-                    }
-                }
-            } catch (Exception e) {
-                // Fallback to reflection with different signatures
-                Method[] methods = callback.getClass().getMethods();
-                for (Method method : methods) {
-                    if (method.getName().equals("__call__")) {
-                        try {
-                            // Try with different parameter combinations
-                            Class<?>[] paramTypes = method.getParameterTypes();
-                            if (paramTypes.length == 2 && argumentName != null) {
-                                result = method.invoke(callback, source, argumentValue);
-                                break;
-                            } else if (paramTypes.length == 1) {
-                                result = method.invoke(callback, source);
-                                break;
-                            } else if (paramTypes.length == 1 && paramTypes[0].isArray()) {
-                                // Try with array parameter
-                                if (argumentName != null) {
-                                    result = method.invoke(callback, new Object[]{new Object[]{source, argumentValue}});
-                                } else {
-                                    result = method.invoke(callback, new Object[]{new Object[]{source}});
-                                }
-                                break;
-                            }
-                        } catch (IllegalArgumentException ex) {
-                            // This signature doesn't match, continue
-                            continue;
-                        }
-                    }
-                }
-            }
-            
-            // Convert result to integer (command result code)
-            if (result instanceof Number) {
-                return ((Number) result).intValue();
-            }
-            return 1; // Default success
+            return timedCallback(source, entry, argumentValue);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Error executing Python command callback: {}", e.getMessage(), e);
             return 0; // Error
         }
     }
+    
+    /**
+     * Run the callback in its mod's context under its time budget and record the call in CommandStats
+     */
+    private static int timedCallback(ServerCommandSource source, CommandEntry entry, Object argumentValue) {
+        ModContext previousMod = PythonManager.enterMod(entry.modId);
+        // Async callbacks are bounded by Commands.AsyncTimeoutMs instead of the per-call budget;
+        // the watchdog is what actually stops the Python code when the executor's timeout fires
+        CallbackWatchdog.Budget budget = entry.async
+            ? CallbackWatchdog.getInstance().begin(entry.modId, AsyncCommandExecutor.getInstance().getTimeoutMillis())
+            : CallbackWatchdog.getInstance().begin(entry.modId);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = runCallback(source, entry, argumentValue);
+            failed = false;
+            return result;
+        } finally {
+            entry.metrics.record(System.nanoTime() - start, failed);
+            String overrun = CallbackWatchdog.getInstance().end(budget);
+            // An interrupted async command has already been reported as timed out by the executor
+            if (overrun != null && !(entry.async && Thread.currentThread().isInterrupted())) {
+                sendError(source, "Command /" + entry.commandName + " was aborted. " + overrun);
+            }
+            PythonManager.exitMod(previousMod);
+        }
+    }
+    
+    private static int runCallback(ServerCommandSource source, CommandEntry entry, Object argumentValue) {
+        if (entry.typedCallback != null) {
+            return entry.typedCallback.run(source, (Object[]) argumentValue);
+        }
+        // Typed adapters call the Python function directly with fixed arity
+        return entry.argumentName != null
+            ? entry.argumentCallback.run(source, argumentValue)
+            : entry.callback.run(source);
+    }
+    
+    /**
+     * A command node in the registry and the mod that owns it
+     */
+    private static class OwnedNode {
+        private final String modId;
+        private final Supplier<LiteralCommandNode<ServerCommandSource>> nodeFactory;
+        
+        private OwnedNode(String modId, Supplier<LiteralCommandNode<ServerCommandSource>> nodeFactory) {
+            this.modId = modId;
+            this.nodeFactory = nodeFactory;
+        }
+    }
+    
+    /**
+     * A registered Python command callback
+     */
+    private static class CommandEntry {
+        private final String commandName;
+        private final String modId;
+        private final CommandStats.Metrics metrics;
+        private final PyCallables.CommandCallback callback;
+        private final PyCallables.ArgumentCommandCallback argumentCallback;
+        private final PyCallables.TypedCommandCallback typedCallback;
+        private final String argumentName;
+        private final boolean greedy;
+        private final CommandArgumentSpec arguments;
+        private final int permissionLevel;
+        private final boolean async;
+        
+        private CommandEntry(String commandName, String modId, PyCallables.CommandCallback callback,
+                             PyCallables.ArgumentCommandCallback argumentCallback, PyCallables.TypedCommandCallback typedCallback,
+                             String argumentName, boolean greedy, CommandArgumentSpec arguments, int permissionLevel, boolean async) {
+            this.commandName = commandName;
+            this.modId = modId;
+            this.metrics = CommandStats.getInstance().register(commandName, modId);
+            this.callback = callback;
+            this.argumentCallback = argumentCallback;
+            this.typedCallback = typedCallback;
+            this.argumentName = argumentName;
+            this.greedy = greedy;
+            this.arguments = arguments;
+            this.permissionLevel = permissionLevel;
+            this.async = async;
+        }
+    }
 }
@@ -2,6 +2,10 @@ package com.gvsds.pyfabricloader;
 
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,13 +28,43 @@ public class PyFabricLoader implements ModInitializer {
 		// 初始化ConfigManager
 		ConfigManager.getInstance().initialize();
 		
-		// 初始化Python管理器
-		PythonManager.getInstance().initialize();
+		// 探测当前版本可用的Minecraft API
+		VersionAdapter.initialize();
+		
+		// 初始化Python管理器，异步模式下在后台线程中加载
+		if (ConfigManager.getInstance().getBoolean("Preload.AsyncInit", false)) {
+			PythonManager.getInstance().initializeAsync();
+		} else {
+			PythonManager.getInstance().initialize();
+		}
 		
 		// 注册命令
 		CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
 			CommandHandler.registerServerCommands(dispatcher, registryAccess);
+			PyCommandAPI.getInstance().attachDispatcher(dispatcher);
+		});
+		
+		// 服务器接受玩家之前等待critical模组加载完成
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> {
+			PythonManager.getInstance().awaitCriticalMods();
+			PyCommandAPI.getInstance().setServer(server);
+			// 单人游戏再次进入世界时重新启动热重载
+			PythonManager.getInstance().startHotReload();
 		});
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			ModFileWatcher.stop();
+			PyCommandAPI.getInstance().setServer(null);
+			OnlinePlayers.getInstance().clear();
+		});
+		
+		// 维护在线玩家索引
+		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> OnlinePlayers.getInstance().add(handler.player));
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> OnlinePlayers.getInstance().remove(handler.player));
+		ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> OnlinePlayers.getInstance().add(newPlayer));
+		
+		// 分发Python模组订阅的tick事件
+		ServerTickEvents.START_SERVER_TICK.register(server -> TickEventBus.getInstance().dispatch(TickEventBus.Phase.START));
+		ServerTickEvents.END_SERVER_TICK.register(server -> TickEventBus.getInstance().dispatch(TickEventBus.Phase.END));
 		
 		LOGGER.info("PyFabricLoader initialized successfully!");
 	}
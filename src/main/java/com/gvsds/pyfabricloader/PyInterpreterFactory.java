@@ -0,0 +1,95 @@
+package com.gvsds.pyfabricloader;
+
+import org.python.core.Py;
+import org.python.core.PyDictionary;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 模组解释器工厂
+ * 每个模组拥有独立的PySystemState，因此有独立的sys.path，模组的压缩包和解压路径不会出现在其他模组的sys.path中；
+ * sys.modules 仍与全局解释器（Py.getSystemState()）共享，与直接创建PythonInterpreter时一样，标准库模块只初始化一次。
+ */
+public class PyInterpreterFactory {
+    private static final String[] SHARED_MODULES = {"os", "re", "json", "time", "math", "random", "collections"};
+
+    private final PySystemState baseState;
+
+    /**
+     * 必须在PythonInterpreter.initialize之后创建
+     */
+    public PyInterpreterFactory() {
+        this.baseState = Py.getSystemState();
+        warmUp();
+    }
+
+    /**
+     * 预先导入常用的标准库模块，之后创建的解释器直接复用
+     */
+    private void warmUp() {
+        PythonInterpreter warmup = new PythonInterpreter(null, baseState);
+        for (String module : SHARED_MODULES) {
+            try {
+                warmup.exec("import " + module);
+            } catch (Exception e) {
+                PyFabricLoader.LOGGER.debug("Shared module {} is not available: {}", module, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 创建模组解释器
+     * @param modId 模组ID，作为__name__
+     * @param extraPaths 只对该模组生效的sys.path条目
+     */
+    public PythonInterpreter create(String modId, String... extraPaths) {
+        long start = System.nanoTime();
+        long allocated = currentThreadAllocatedBytes();
+
+        PySystemState state = new PySystemState();
+        state.modules = baseState.modules;
+        state.path = new PyList((PyObject) baseState.path);
+        for (String path : extraPaths) {
+            state.path.append(Py.newString(path));
+        }
+
+        PythonInterpreter interpreter = new PythonInterpreter(null, state);
+        interpreter.set("__name__", modId);
+        interpreter.set("ModInfos", new PyDictionary());
+        interpreter.set("PyCommandAPI", PyCommandAPI.getInstance());
+        interpreter.set("PyCallables", PyCallables.class);
+        interpreter.set("ConfigManager", ConfigManager.getInstance());
+
+        // 只统计create()本身在当前线程上的分配，不包括之后执行模组代码的分配，也不是解释器的常驻大小
+        long allocatedAfter = currentThreadAllocatedBytes();
+        PyFabricLoader.LOGGER.info("Created interpreter for {} in {} us ({} KB allocated by create)", modId,
+                (System.nanoTime() - start) / 1000,
+                allocated < 0 ? "?" : String.valueOf((allocatedAfter - allocated) / 1024));
+        return interpreter;
+    }
+
+    /**
+     * 所有模组共享的sys.modules
+     */
+    public PyObject getSharedModules() {
+        return baseState.modules;
+    }
+
+    /**
+     * 当前线程累计分配的字节数，JVM不支持时返回-1
+     */
+    static long currentThreadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean extended = (com.sun.management.ThreadMXBean) bean;
+            if (extended.isThreadAllocatedMemorySupported() && extended.isThreadAllocatedMemoryEnabled()) {
+                return extended.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -6,119 +6,91 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.file.*;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import com.gvsds.pyfabricloader.ConfigManager;
 import com.google.gson.*;
-import java.io.InputStreamReader;
 import java.io.InputStream;
 import net.fabricmc.loader.api.Version;
 
 public class PythonManager {
     private static final PythonManager INSTANCE = new PythonManager();
-    private final Map<String, PyModInfo> loadedMods = new HashMap<>();
-    private final Map<String, PythonInterpreter> interpreters = new HashMap<>();
+    // 当前线程正在执行的模组，用于把注册的命令等归属到模组
+    private final Map<String, PyModInfo> loadedMods = new ConcurrentHashMap<>();
+    private final Map<String, PythonInterpreter> interpreters = new ConcurrentHashMap<>();
+    private final Map<String, File> modFiles = new ConcurrentHashMap<>();
+    private final Map<String, ModCandidate> dormantMods = new ConcurrentHashMap<>();
+    private final File pyfabricDir;
     private final File modsDir;
     private final File configsDir;
     private final File libsDir;
     private final File filesDir;
+    private final ModExtractionCache extractionCache;
+    private final BytecodeCache bytecodeCache;
+    private final ModDiscoveryIndex discoveryIndex;
+    private final Map<String, java.util.regex.Pattern> compiledPatterns = new ConcurrentHashMap<>();
     private PythonInterpreter globalInterpreter;
+    private PyInterpreterFactory interpreterFactory;
+    private volatile LoadProfiler profiler = LoadProfiler.disabled("runtime");
+    private final CompletableFuture<Void> criticalReady = new CompletableFuture<>();
+    // 初始加载（包括后台加载）是否完成，之前不启动热重载
+    private volatile boolean modsLoaded;
+    private final Map<String, LoadProfiler> profiles = new ConcurrentHashMap<>();
+    private String stdlibPath;
+    // 当前版本在进程内不会变化，只查询一次
+    private volatile String currentMinecraftVersion;
+    private volatile String currentPyFabricVersion;
 
     private PythonManager() {
         // 初始化工作目录
-        File pyfabricDir = new File("pyfabric");
+        pyfabricDir = new File("pyfabric");
         modsDir = new File(pyfabricDir, "mods");
         configsDir = new File(pyfabricDir, "configs");
         libsDir = new File(pyfabricDir, "libs");
         filesDir = new File(pyfabricDir, "files");
+        long cacheLimit = ConfigManager.getInstance().getInt("Preload.ExtractCacheMaxMB", 256) * 1024L * 1024L;
+        extractionCache = new ModExtractionCache(new File(pyfabricDir, "cache/extracted"), cacheLimit);
+        bytecodeCache = new BytecodeCache(new File(libsDir, ".jython-cache/bytecode"),
+                ConfigManager.getInstance().getInt("Preload.BytecodeCacheMaxMB", 64) * 1024L * 1024L);
+        discoveryIndex = new ModDiscoveryIndex(new File(pyfabricDir, "cache/discovery-index.json"));
     }
     
     /**
-     * 检查版本是否满足条件
-     * 支持的格式：
-     * - >=1.20.1
-     * - <1.20.1
-     * - =1.20.1
-     * - !=["1.20.1", "1.34.7"]
+     * 检查版本是否满足条件，支持的格式见 {@link VersionConstraint}
      */
     private boolean checkVersion(String condition, String currentVersion) {
         try {
-            if (condition == null || condition.isEmpty()) {
-                return true;
-            }
-            
-            // 处理不等于多个版本的情况
-            if (condition.startsWith("!=[")) {
-                JsonArray versionsArray = JsonParser.parseString(condition).getAsJsonArray();
-                for (JsonElement element : versionsArray) {
-                    if (currentVersion.equals(element.getAsString())) {
-                        return false;
-                    }
-                }
-                return true;
-            }
-            
-            // 处理其他比较操作
-            if (condition.startsWith(">=")) {
-                return compareVersions(currentVersion, condition.substring(2)) >= 0;
-            } else if (condition.startsWith("<=")) {
-                return compareVersions(currentVersion, condition.substring(2)) <= 0;
-            } else if (condition.startsWith(">")) {
-                return compareVersions(currentVersion, condition.substring(1)) > 0;
-            } else if (condition.startsWith("<")) {
-                return compareVersions(currentVersion, condition.substring(1)) < 0;
-            } else if (condition.startsWith("=")) {
-                return currentVersion.equals(condition.substring(1));
-            }
-            
-            // 如果没有前缀，则默认是等于
-            return currentVersion.equals(condition);
+            return VersionConstraint.parse(condition).test(currentVersion);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.warn("Failed to check version condition {} for {}", condition, currentVersion, e);
             return false;
         }
     }
     
-    /**
-     * 比较两个版本字符串
-     * @return 0 if equal, 1 if version1 > version2, -1 if version1 < version2
-     */
-    private int compareVersions(String version1, String version2) {
-        try {
-            String[] parts1 = version1.split("\\.");
-            String[] parts2 = version2.split("\\.");
-            
-            int maxLength = Math.max(parts1.length, parts2.length);
-            
-            for (int i = 0; i < maxLength; i++) {
-                int num1 = i < parts1.length ? Integer.parseInt(parts1[i].replaceAll("\\D", "")) : 0;
-                int num2 = i < parts2.length ? Integer.parseInt(parts2[i].replaceAll("\\D", "")) : 0;
-                
-                if (num1 != num2) {
-                    return Integer.compare(num1, num2);
-                }
-            }
-            
-            return 0;
-        } catch (Exception e) {
-            PyFabricLoader.LOGGER.warn("Failed to compare versions {} and {}", version1, version2, e);
-            return 0;
-        }
-    }
-    
     /**
      * 获取当前Minecraft版本
      */
     private String getCurrentMinecraftVersion() {
+        if (currentMinecraftVersion != null) {
+            return currentMinecraftVersion;
+        }
         try {
             // 通过Fabric API获取Minecraft版本
-            return net.fabricmc.loader.api.FabricLoader.getInstance().getModContainer("minecraft")
+            currentMinecraftVersion = net.fabricmc.loader.api.FabricLoader.getInstance().getModContainer("minecraft")
                     .map(container -> container.getMetadata().getVersion().getFriendlyString())
                     .orElse("unknown");
+            return currentMinecraftVersion;
         } catch (Exception e) {
             PyFabricLoader.LOGGER.warn("Failed to get Minecraft version", e);
             return "unknown";
@@ -129,11 +101,15 @@ public class PythonManager {
      * 获取当前PyFabricLoader版本
      */
     private String getCurrentPyFabricVersion() {
+        if (currentPyFabricVersion != null) {
+            return currentPyFabricVersion;
+        }
         try {
             // 尝试通过Fabric API获取PyFabricLoader版本
-            return net.fabricmc.loader.api.FabricLoader.getInstance().getModContainer("pyfabricloader")
+            currentPyFabricVersion = net.fabricmc.loader.api.FabricLoader.getInstance().getModContainer("pyfabricloader")
                     .map(container -> container.getMetadata().getVersion().getFriendlyString())
                     .orElse("1.0.0"); // 默认版本
+            return currentPyFabricVersion;
         } catch (Exception e) {
             PyFabricLoader.LOGGER.warn("Failed to get PyFabricLoader version", e);
             return "1.0.0";
@@ -145,16 +121,100 @@ public class PythonManager {
     }
 
     public void initialize() {
+        profiler = new LoadProfiler("startup");
+        try {
+            if (!bootstrap()) {
+                return;
+            }
+            // 加载所有mod
+            loadAllMods();
+            finishProfile();
+
+            // 按配置启动热重载
+            modsLoaded = true;
+            startHotReload();
+        } finally {
+            criticalReady.complete(null);
+        }
+    }
+
+    /**
+     * 在后台线程中初始化，不阻塞Fabric的启动流程
+     * 先加载info.json中标记为critical的模组（及其依赖），服务器在SERVER_STARTING时等待这一步完成；
+     * 其余模组随后在后台加载，期间它们声明的命令以占位节点存在，列表中显示为加载中。
+     */
+    public void initializeAsync() {
+        profiler = new LoadProfiler("startup");
+        Thread thread = new Thread(() -> {
+            try {
+                if (!bootstrap()) {
+                    return;
+                }
+                loadAllMods(this::isCritical, true);
+            } catch (Exception e) {
+                PyFabricLoader.LOGGER.error("Error loading critical mods: " + e.getMessage(), e);
+            } finally {
+                criticalReady.complete(null);
+            }
+
+            try {
+                loadAllMods(candidate -> true, false);
+                finishProfile();
+                // 后台加载的模组注册的命令需要重新发送给已在线的玩家
+                PyCommandAPI.getInstance().resendCommandTrees();
+                modsLoaded = true;
+                startHotReload();
+                PyFabricLoader.LOGGER.info("Background mod loading finished");
+            } catch (Exception e) {
+                PyFabricLoader.LOGGER.error("Error loading mods in background: " + e.getMessage(), e);
+            }
+        }, "PyFabric-Init");
+        thread.setDaemon(true);
+        thread.setContextClassLoader(getClass().getClassLoader());
+        thread.start();
+    }
+
+    /**
+     * 按配置启动热重载；初始加载完成之前调用时不做任何事，由加载完成时启动
+     * 服务器停止时监视器会关闭，同一进程中再次启动服务器（单人游戏进入另一个世界）时重新调用
+     */
+    public void startHotReload() {
+        if (modsLoaded) {
+            ModFileWatcher.startIfEnabled(this, modsDir, libsDir);
+        }
+    }
+
+    /**
+     * 等待critical模组加载完成，在服务器接受玩家之前调用
+     */
+    public void awaitCriticalMods() {
+        if (!criticalReady.isDone()) {
+            PyFabricLoader.LOGGER.info("Waiting for critical Python mods to load...");
+        }
+        criticalReady.join();
+    }
+
+    /**
+     * 解压Jython并创建全局解释器和模组解释器工厂
+     * @return 是否成功，失败时不再加载模组
+     */
+    private boolean bootstrap() {
         // 创建必要的文件夹
         createDirectories();
         
         // 从jar中提取jython到libs目录
-        extractJythonFromJar();
+        try (LoadProfiler.Scope ignored = profiler.phase("jython.extract")) {
+            extractJythonFromJar();
+        }
         
         try {
             // 确保libs目录在Python路径中
             String pythonPath = System.getProperty("python.path", 
                     System.getProperty("java.class.path").replace(File.pathSeparatorChar, ':'));
+            // 标准库在libs目录之前，旧版本解压到libs顶层的 os.py、re.py 等文件不会遮蔽 libs/Lib 中的标准库
+            if (stdlibPath != null) {
+                pythonPath += ":" + stdlibPath;
+            }
             pythonPath += ":" + libsDir.getAbsolutePath();
             System.setProperty("python.path", pythonPath);
             
@@ -179,19 +239,23 @@ public class PythonManager {
             props.setProperty("python.jit", "false");
             props.setProperty("python.security.respectJavaAccessibility", "true");
             
-            PythonInterpreter.initialize(System.getProperties(), props, new String[0]);
+            try (LoadProfiler.Scope ignored = profiler.phase("jython.initialize")) {
+                PythonInterpreter.initialize(System.getProperties(), props, new String[0]);
+            }
             
             PyFabricLoader.LOGGER.info("Creating PythonInterpreter instance...");
-            globalInterpreter = new PythonInterpreter();
-            setupGlobalInterpreter();
-            
-            // 加载所有mod
-            loadAllMods();
+            try (LoadProfiler.Scope ignored = profiler.phase("interpreter.global")) {
+                globalInterpreter = new PythonInterpreter();
+                setupGlobalInterpreter();
+                interpreterFactory = new PyInterpreterFactory();
+            }
+            return true;
         } catch (ClassNotFoundException e) {
             PyFabricLoader.LOGGER.error("Critical Jython class not found: " + e.getMessage(), e);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Error during Jython initialization: " + e.getMessage(), e);
         }
+        return false;
     }
 
     private void createDirectories() {
@@ -211,6 +275,9 @@ public class PythonManager {
         // 注册PyCommandAPI实例，让Python脚本可以直接访问
         globalInterpreter.set("PyCommandAPI", PyCommandAPI.getInstance());
         
+        // 注册PyCallables，让Python函数可以转换为Java函数式接口
+        globalInterpreter.set("PyCallables", PyCallables.class);
+        
         // 注册ConfigManager实例，让Python脚本可以访问配置信息
         globalInterpreter.set("ConfigManager", ConfigManager.getInstance());
         
@@ -229,332 +296,952 @@ public class PythonManager {
         }
     }
 
-    public void loadAllMods() {
+    public synchronized void loadAllMods() {
+        loadAllMods(candidate -> true, false);
+    }
+
+    /**
+     * 加载选中的模组及其依赖，已加载或已登记为未激活的模组会被跳过
+     * @param include 选择要加载的模组
+     * @param markPending 为true时未选中的模组登记为加载中，并为其声明的命令注册占位节点
+     * 只在扫描和每一批加载期间持有锁，后台加载时 reload、unload 等命令可以在两批之间执行
+     */
+    private void loadAllMods(java.util.function.Predicate<ModCandidate> include, boolean markPending) {
+        // 先读取所有模组的元数据，再按依赖关系分批加载
+        List<ModCandidate> candidates;
+        List<List<ModCandidate>> waves;
+        synchronized (this) {
+            try (LoadProfiler.Scope ignored = profiler.phase("mods.discover")) {
+                candidates = discoverMods();
+                waves = new ModLoadPlanner(this::checkVersion).plan(candidates);
+            }
+        }
+        PyFabricLoader.LOGGER.info("Planned {} mods in {} waves", candidates.size(), waves.size());
+        Set<String> selected = selectWithDependencies(candidates, include);
+        int cacheHits = bytecodeCache.getHits();
+        int cacheMisses = bytecodeCache.getMisses();
+
+        int parallelism = Math.max(1, ConfigManager.getInstance().getInt("Preload.Parallelism",
+                Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = null;
+        try (LoadProfiler.Scope ignored = profiler.phase("mods.load")) {
+            for (List<ModCandidate> wave : waves) {
+                synchronized (this) {
+                    // 延迟激活的模组只登记元数据和占位命令，首次使用时再执行
+                    wave = new ArrayList<>(wave);
+                    wave.removeIf(candidate -> interpreters.containsKey(candidate.getId()) || dormantMods.containsKey(candidate.getId()));
+                    if (markPending) {
+                        wave.removeIf(candidate -> !selected.contains(candidate.getId()) && registerPending(candidate));
+                    } else {
+                        wave.removeIf(candidate -> !selected.contains(candidate.getId()));
+                    }
+                    wave.removeIf(candidate -> isLazy(candidate) && registerDormant(candidate));
+                    List<LoadedMod> results = new ArrayList<>(wave.size());
+                    if (wave.size() == 1 || parallelism == 1) {
+                        for (ModCandidate candidate : wave) {
+                            results.add(executeCandidate(candidate));
+                        }
+                    } else {
+                        if (executor == null) {
+                            executor = Executors.newFixedThreadPool(parallelism, new LoaderThreadFactory());
+                        }
+                        List<Future<LoadedMod>> futures = new ArrayList<>(wave.size());
+                        for (ModCandidate candidate : wave) {
+                            futures.add(executor.submit(() -> executeCandidate(candidate)));
+                        }
+                        for (int i = 0; i < futures.size(); i++) {
+                            try {
+                                results.add(futures.get(i).get());
+                            } catch (ExecutionException e) {
+                                PyFabricLoader.LOGGER.error("Failed to load mod: {}", wave.get(i).getId(), e.getCause());
+                                results.add(null);
+                            }
+                        }
+                    }
+                    // 按计划顺序提交结果，保证与串行加载的结果一致
+                    for (int i = 0; i < results.size(); i++) {
+                        if (results.get(i) != null) {
+                            commitMod(results.get(i));
+                        } else {
+                            // 加载失败的模组不再显示为加载中
+                            loadedMods.remove(wave.get(i).getId());
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            PyFabricLoader.LOGGER.error("Interrupted while loading mods", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        // 解压时计算的哈希
+        discoveryIndex.save();
+        bytecodeCache.evictIfNeeded();
+        PyFabricLoader.LOGGER.info("Bytecode cache: {} hits, {} misses",
+                bytecodeCache.getHits() - cacheHits, bytecodeCache.getMisses() - cacheMisses);
+    }
+
+    /**
+     * 选中的模组加上它们传递依赖的所有模组
+     */
+    private Set<String> selectWithDependencies(List<ModCandidate> candidates, java.util.function.Predicate<ModCandidate> include) {
+        Map<String, ModCandidate> byId = new HashMap<>();
+        for (ModCandidate candidate : candidates) {
+            byId.put(candidate.getId(), candidate);
+        }
+        Set<String> selected = new HashSet<>();
+        Deque<ModCandidate> pending = new ArrayDeque<>();
+        for (ModCandidate candidate : candidates) {
+            if (include.test(candidate)) {
+                pending.add(candidate);
+            }
+        }
+        while (!pending.isEmpty()) {
+            ModCandidate candidate = pending.poll();
+            if (selected.add(candidate.getId())) {
+                for (String dependency : candidate.getDepends().keySet()) {
+                    ModCandidate dependencyCandidate = byId.get(dependency);
+                    if (dependencyCandidate != null) {
+                        pending.add(dependencyCandidate);
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 扫描mods目录，按串行加载顺序返回所有候选模组
+     * 阶段：自定义顺序（逐个） -> 优先匹配的ZIP -> 其余ZIP -> 单文件模组
+     */
+    private List<ModCandidate> discoverMods() {
         ConfigManager configManager = ConfigManager.getInstance();
-        
+        List<ModCandidate> candidates = new ArrayList<>();
+        int stage = 0;
+
         // 加载ZIP格式的mods
         if (configManager.isModeEnabled("Mods")) {
             PyFabricLoader.LOGGER.info("Loading mods from ZIP files...");
             String matchingPattern = configManager.getModuleMatchingPattern();
             String priorityPattern = configManager.getPriorityModuleMatchingPattern();
+            java.util.regex.Pattern priority = compilePattern(priorityPattern);
+            java.util.regex.Pattern matching = compilePattern(matchingPattern);
             List<String> customOrder = configManager.getCustomLoadOrder();
-            
-            // 先处理自定义顺序的mods
+            Set<String> customNames = new HashSet<>();
+
+            // 先处理自定义顺序的mods，每个都是单独的阶段
             for (String modName : customOrder) {
+                customNames.add(modName);
+                customNames.add(modName + ".zip");
                 File modFile = new File(modsDir, modName);
                 if (!modFile.exists()) {
                     modFile = new File(modsDir, modName + ".zip");
                 }
                 if (modFile.exists()) {
-                    loadMod(modFile);
+                    addCandidate(candidates, readCandidate(modFile, stage++));
                 }
             }
-            
+
             // 加载剩余的ZIP mods
-            File[] zipFiles = modsDir.listFiles((dir, name) -> {
-                if (!name.toLowerCase().endsWith(".zip")) return false;
-                // 检查是否已经在自定义顺序中加载过
-                if (customOrder.stream().anyMatch(order -> name.equals(order) || name.equals(order + ".zip"))) {
-                    return false;
-                }
-                // 应用匹配规则
-                return name.matches(matchingPattern) || name.matches(priorityPattern);
-            });
-            
+            File[] zipFiles = modsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".zip") && !customNames.contains(name));
             if (zipFiles != null) {
+                Arrays.sort(zipFiles);
+                int priorityStage = stage++;
+                int normalStage = stage++;
                 for (File zipFile : zipFiles) {
-                    loadMod(zipFile);
+                    String name = zipFile.getName();
+                    // 应用匹配规则
+                    if (priority.matcher(name).matches()) {
+                        addCandidate(candidates, readCandidate(zipFile, priorityStage));
+                    } else if (matching.matcher(name).matches()) {
+                        addCandidate(candidates, readCandidate(zipFile, normalStage));
+                    }
                 }
             }
         }
-        
+
         // 加载单文件模式的mods
         if (configManager.isModeEnabled("ModSingleFileMode")) {
             PyFabricLoader.LOGGER.info("Loading mods from single Python files...");
             File[] pyFiles = modsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".py"));
             if (pyFiles != null) {
+                Arrays.sort(pyFiles);
+                int singleFileStage = stage;
                 for (File pyFile : pyFiles) {
-                    loadSingleFileMod(pyFile);
+                    String modId = pyFile.getName().replace(".py", "");
+                    candidates.add(new ModCandidate(modId, pyFile, ModCandidate.Kind.SINGLE_FILE, null, singleFileStage));
+                }
+            }
+        }
+
+        // 删除已不存在的压缩包的索引记录
+        String[] names = modsDir.list();
+        discoveryIndex.retain(names != null ? new HashSet<>(Arrays.asList(names)) : Collections.emptySet());
+        discoveryIndex.save();
+        return candidates;
+    }
+
+    /**
+     * 配置中的匹配规则只编译一次
+     */
+    private java.util.regex.Pattern compilePattern(String regex) {
+        return compiledPatterns.computeIfAbsent(regex, java.util.regex.Pattern::compile);
+    }
+
+    private void addCandidate(List<ModCandidate> candidates, ModCandidate candidate) {
+        if (candidate != null && isCompatible(candidate)) {
+            candidates.add(candidate);
+        }
+    }
+
+    /**
+     * 从发现索引获取info.json，压缩包变化时才打开它读取
+     */
+    private ModCandidate readCandidate(File zipFile, int stage) {
+        String modId = zipFile.getName().replace(".zip", "");
+        try (LoadProfiler.Scope ignored = profiler.phase(modId, "metadata")) {
+            ModDiscoveryIndex.Entry entry = discoveryIndex.get(zipFile);
+            JsonObject infoJson = entry.getInfo();
+            if (infoJson == null) {
+                PyFabricLoader.LOGGER.warn("No info.json found in {}, skipping mod", zipFile.getName());
+                return null;
+            }
+            return new ModCandidate(modId, zipFile, ModCandidate.Kind.ARCHIVE, infoJson, stage, entry.getHash());
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.error("Failed to read mod metadata: {}", modId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 验证模组声明的版本要求，压缩包的判断结果记录在发现索引中
+     */
+    private boolean isCompatible(ModCandidate candidate) {
+        if (candidate.getKind() != ModCandidate.Kind.ARCHIVE) {
+            return checkCompatibility(candidate);
+        }
+        String versionKey = getCurrentPyFabricVersion() + "/" + getCurrentMinecraftVersion();
+        try {
+            Boolean verdict = discoveryIndex.get(candidate.getFile()).getVerdict(versionKey);
+            if (verdict != null) {
+                if (!verdict) {
+                    PyFabricLoader.LOGGER.warn("Mod {} is not compatible with PyFabricLoader {} / Minecraft {}, skipping",
+                            candidate.getId(), getCurrentPyFabricVersion(), getCurrentMinecraftVersion());
+                }
+                return verdict;
+            }
+        } catch (IOException e) {
+            PyFabricLoader.LOGGER.debug("Mod {} is not indexed: {}", candidate.getId(), e.getMessage());
+        }
+        boolean compatible = checkCompatibility(candidate);
+        discoveryIndex.setVerdict(candidate.getFile(), versionKey, compatible);
+        return compatible;
+    }
+
+    private boolean checkCompatibility(ModCandidate candidate) {
+        JsonObject infoJson = candidate.getInfo();
+        String modId = candidate.getId();
+        String pyfabricVersion = infoJson.has("pyfabric-version") ? infoJson.get("pyfabric-version").getAsString() : null;
+        String minecraftVersion = infoJson.has("minecraft-version") ? infoJson.get("minecraft-version").getAsString() : null;
+        String currentPyFabricVersion = getCurrentPyFabricVersion();
+        String currentMinecraftVersion = getCurrentMinecraftVersion();
+
+        // 验证PyFabricLoader版本
+        if (!checkVersion(pyfabricVersion, currentPyFabricVersion)) {
+            PyFabricLoader.LOGGER.warn("Mod {} requires PyFabricLoader version {} but current is {}, skipping", 
+                    modId, pyfabricVersion, currentPyFabricVersion);
+            return false;
+        }
+
+        // 验证Minecraft版本
+        if (!checkVersion(minecraftVersion, currentMinecraftVersion)) {
+            PyFabricLoader.LOGGER.warn("Mod {} requires Minecraft version {} but current is {}, skipping", 
+                    modId, minecraftVersion, currentMinecraftVersion);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 是否延迟激活：info.json中的lazy优先，否则使用全局的Preload.Lazy
+     */
+    private boolean isLazy(ModCandidate candidate) {
+        JsonObject infoJson = candidate.getInfo();
+        if (infoJson == null) {
+            return false;
+        }
+        if (infoJson.has("lazy")) {
+            return infoJson.get("lazy").getAsBoolean();
+        }
+        return ConfigManager.getInstance().getBoolean("Preload.Lazy", false);
+    }
+
+    /**
+     * 异步初始化时在服务器接受玩家之前加载的模组
+     */
+    private boolean isCritical(ModCandidate candidate) {
+        JsonObject infoJson = candidate.getInfo();
+        return infoJson != null && infoJson.has("critical") && infoJson.get("critical").getAsBoolean();
+    }
+
+    /**
+     * 登记一个未激活的模组，并为info.json中声明的命令注册占位节点
+     */
+    private boolean registerDormant(ModCandidate candidate) {
+        String modId = candidate.getId();
+        dormantMods.put(modId, candidate);
+        loadedMods.put(modId, new PyModInfo(modId, candidate.getInfo(), PyModInfo.State.DORMANT));
+        modFiles.put(modId, candidate.getFile());
+        registerPlaceholders(candidate);
+        PyFabricLoader.LOGGER.info("Registered dormant mod: {}", modId);
+        return true;
+    }
+
+    /**
+     * 登记一个等待后台加载的模组，加载完成前它的命令只回复加载中
+     */
+    private boolean registerPending(ModCandidate candidate) {
+        String modId = candidate.getId();
+        JsonObject infoJson = candidate.getInfo();
+        loadedMods.put(modId, infoJson != null
+                ? new PyModInfo(modId, infoJson, PyModInfo.State.LOADING)
+                : new PyModInfo(modId, new JsonObject(), PyModInfo.State.LOADING));
+        registerPlaceholders(candidate);
+        return true;
+    }
+
+    private void registerPlaceholders(ModCandidate candidate) {
+        JsonObject infoJson = candidate.getInfo();
+        if (infoJson != null && infoJson.has("commands") && infoJson.get("commands").isJsonArray()) {
+            // 每项为命令名，或 {"name": 命令名, "permission": 权限等级}
+            for (JsonElement command : infoJson.getAsJsonArray("commands")) {
+                if (command.isJsonObject()) {
+                    JsonObject declaration = command.getAsJsonObject();
+                    if (declaration.has("name")) {
+                        PyCommandAPI.getInstance().registerPlaceholderCommand(declaration.get("name").getAsString(), candidate.getId(),
+                                declaration.has("permission") ? declaration.get("permission").getAsInt() : 0);
+                    }
+                } else {
+                    PyCommandAPI.getInstance().registerPlaceholderCommand(command.getAsString(), candidate.getId());
                 }
             }
         }
     }
+
+    /**
+     * 获取模组的当前状态
+     * @return 状态，模组不存在时返回null
+     */
+    public PyModInfo.State getModState(String modId) {
+        PyModInfo info = loadedMods.get(modId);
+        return info != null ? info.getState() : null;
+    }
+
+    /**
+     * 激活未激活的模组，在它的命令第一次被使用时调用
+     * @return 模组是否处于已激活状态
+     */
+    public boolean activateMod(String modId) {
+        ModCandidate candidate = dormantMods.get(modId);
+        if (candidate == null) {
+            return interpreters.containsKey(modId);
+        }
+        synchronized (candidate) {
+            if (dormantMods.get(modId) != candidate) {
+                return interpreters.containsKey(modId);
+            }
+            PyFabricLoader.LOGGER.info("Activating dormant mod: {}", modId);
+            LoadedMod loaded = executeCandidate(candidate);
+            dormantMods.remove(modId);
+            if (loaded == null) {
+                loadedMods.remove(modId);
+                modFiles.remove(modId);
+                return false;
+            }
+            commitMod(loaded);
+            return true;
+        }
+    }
+
+    /**
+     * 执行候选模组，可在加载线程池中调用
+     * @return 加载结果，失败时返回null
+     */
+    private LoadedMod executeCandidate(ModCandidate candidate) {
+        // 依赖的模组在之前的批次中加载失败时跳过，未激活的依赖先激活
+        for (String dependency : candidate.getDepends().keySet()) {
+            if (dormantMods.containsKey(dependency)) {
+                activateMod(dependency);
+            }
+            if (!interpreters.containsKey(dependency)) {
+                PyFabricLoader.LOGGER.error("Mod {} depends on {} which failed to load, skipping", candidate.getId(), dependency);
+                return null;
+            }
+        }
+        ModContext previous = enterMod(candidate.getId());
+        try {
+            return candidate.getKind() == ModCandidate.Kind.SINGLE_FILE
+                    ? executeSingleFileMod(candidate.getFile())
+                    : executeMod(candidate);
+        } finally {
+            exitMod(previous);
+        }
+    }
+
+    /**
+     * 获取当前线程正在执行的模组
+     * @return 模组ID，不在模组代码中时返回null
+     */
+    public static String getExecutingModId() {
+        return ModContext.current();
+    }
+
+    /**
+     * 进入指定模组的上下文（模组ID和它的PySystemState），供命令回调等在加载之后运行的模组代码使用，须与 exitMod 成对调用
+     * @return 之前的上下文，传给 exitMod
+     */
+    static ModContext enterMod(String modId) {
+        return ModContext.enter(modId);
+    }
+
+    static void exitMod(ModContext previous) {
+        previous.exit();
+    }
+
+    private void commitMod(LoadedMod loaded) {
+        // 存储mod信息和解释器
+        loadedMods.put(loaded.info.getId(), loaded.info);
+        interpreters.put(loaded.info.getId(), loaded.interpreter);
+        ModContext.register(loaded.info.getId(), loaded.interpreter.getSystemState());
+        modFiles.put(loaded.info.getId(), loaded.source);
+    }
     
     private boolean loadSingleFileMod(File pyFile) {
+        LoadedMod loaded;
+        ModContext previous = enterMod(pyFile.getName().replace(".py", ""));
+        try {
+            loaded = executeSingleFileMod(pyFile);
+        } finally {
+            exitMod(previous);
+        }
+        if (loaded == null) {
+            return false;
+        }
+        commitMod(loaded);
+        return true;
+    }
+
+    private LoadedMod executeSingleFileMod(File pyFile) {
         String modId = pyFile.getName().replace(".py", "");
         PyFabricLoader.LOGGER.info("Loading single file mod: {}", modId);
         
         try {
-            // 创建新的解释器实例
-            PythonInterpreter interpreter = new PythonInterpreter();
-            interpreter.set("__name__", modId);
-            interpreter.set("ModInfos", new PyDictionary());
-            interpreter.set("PyCommandAPI", PyCommandAPI.getInstance());
-            interpreter.set("ConfigManager", ConfigManager.getInstance());
-            
-            // 添加mods目录到Python路径
-            interpreter.exec("import sys");
-            interpreter.exec("sys.path.append('" + modsDir.getAbsolutePath() + "')");
+            // 创建新的解释器实例，mods目录只加入该模组自己的Python路径
+            PythonInterpreter interpreter;
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "interpreter")) {
+                interpreter = interpreterFactory.create(modId, modsDir.getAbsolutePath());
+            }
             
-            // 执行Python文件
-            interpreter.execfile(pyFile.getAbsolutePath());
+            // 执行Python文件，优先使用缓存的字节码
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "execute")) {
+                interpreter.exec(bytecodeCache.compileFile(modId, pyFile));
+            }
             
             // 获取ModInfos
             PyDictionary modInfos = (PyDictionary) interpreter.get("ModInfos");
             PyModInfo modInfo = new PyModInfo(modId, modInfos);
             
-            // 存储mod信息和解释器
-            loadedMods.put(modId, modInfo);
-            interpreters.put(modId, interpreter);
-            
             PyFabricLoader.LOGGER.info("Successfully loaded single file mod: {} - {}", modId, modInfo.getName());
-            return true;
+            return new LoadedMod(modInfo, interpreter, pyFile);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Failed to load single file mod: {}", modId, e);
-            return false;
+            return null;
         }
     }
 
     public boolean loadMod(File zipFile) {
-        String modId = zipFile.getName().replace(".zip", "");
-        PyFabricLoader.LOGGER.info("Loading mod: {}", modId);
+        ModCandidate candidate = readCandidate(zipFile, 0);
+        boolean compatible = candidate != null && isCompatible(candidate);
+        discoveryIndex.save();
+        if (!compatible) {
+            return false;
+        }
+        LoadedMod loaded = executeCandidate(candidate);
+        if (loaded == null) {
+            return false;
+        }
+        commitMod(loaded);
+        return true;
+    }
 
-        try {
-            // 创建临时目录解压zip
-            Path tempDir = Files.createTempDirectory("pyfabric_mod_");
-            extractZip(zipFile, tempDir.toFile());
+    private LoadedMod executeMod(ModCandidate candidate) {
+        // 默认直接从压缩包导入，info.json中 "extract": true 的模组仍然解压到磁盘
+        JsonObject infoJson = candidate.getInfo();
+        boolean extract = infoJson.has("extract") && infoJson.get("extract").getAsBoolean();
+        if (!extract && ConfigManager.getInstance().getBoolean("Preload.ZipImport", true)) {
+            return executeModFromArchive(candidate);
+        }
+        return executeModExtracted(candidate);
+    }
 
-            // 查找info.json文件
-            File infoJsonFile = new File(tempDir.toFile(), "info.json");
-            if (!infoJsonFile.exists()) {
-                PyFabricLoader.LOGGER.warn("No info.json found in {}, skipping mod", zipFile.getName());
-                deleteDirectory(tempDir.toFile());
-                return false;
+    /**
+     * 把压缩包本身加入sys.path，模组内的模块由CachedModImporter直接从压缩包读取，除字节码缓存外不向磁盘写入任何文件
+     */
+    private LoadedMod executeModFromArchive(ModCandidate candidate) {
+        File zipFile = candidate.getFile();
+        String modId = candidate.getId();
+        PyFabricLoader.LOGGER.info("Loading mod: {} (zip import)", modId);
+
+        try {
+            // 直接从压缩包读取__init__.py
+            String source;
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "read");
+                 ZipFile zip = new ZipFile(zipFile)) {
+                ZipEntry initEntry = zip.getEntry("__init__.py");
+                if (initEntry == null) {
+                    PyFabricLoader.LOGGER.warn("No __init__.py found in {}", zipFile.getName());
+                    return null;
+                }
+                try (InputStream in = zip.getInputStream(initEntry)) {
+                    source = new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+                }
             }
 
-            // 读取和解析info.json
-            Gson gson = new Gson();
-            JsonObject infoJson = gson.fromJson(java.nio.file.Files.newBufferedReader(infoJsonFile.toPath()), JsonObject.class);
+            String archivePath = zipFile.getAbsolutePath();
+            String initPath = archivePath + File.separator + "__init__.py";
 
-            // 验证版本要求
-            String pyfabricVersion = infoJson.has("pyfabric-version") ? infoJson.get("pyfabric-version").getAsString() : null;
-            String minecraftVersion = infoJson.has("minecraft-version") ? infoJson.get("minecraft-version").getAsString() : null;
-            String currentPyFabricVersion = getCurrentPyFabricVersion();
-            String currentMinecraftVersion = getCurrentMinecraftVersion();
+            // 创建新的解释器实例，压缩包只加入该模组自己的Python路径
+            PythonInterpreter interpreter;
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "interpreter")) {
+                interpreter = interpreterFactory.create(modId, archivePath);
+                interpreter.set("__file__", initPath);
 
-            // 验证PyFabricLoader版本
-            if (!checkVersion(pyfabricVersion, currentPyFabricVersion)) {
-                PyFabricLoader.LOGGER.warn("Mod {} requires PyFabricLoader version {} but current is {}, skipping", 
-                        modId, pyfabricVersion, currentPyFabricVersion);
-                deleteDirectory(tempDir.toFile());
-                return false;
+                // 压缩包可能在重载时被替换，先丢弃zipimport对旧文件的缓存
+                interpreter.set("__archive", archivePath);
+                interpreter.exec("import zipimport\n"
+                        + "getattr(zipimport, '_zip_directory_cache', {}).pop(__archive, None)\n"
+                        + "del __archive");
+                // 模组内的import同样经过字节码缓存
+                CachedModImporter.installForArchive(interpreter.getSystemState(), zipFile, bytecodeCache);
             }
 
-            // 验证Minecraft版本
-            if (!checkVersion(minecraftVersion, currentMinecraftVersion)) {
-                PyFabricLoader.LOGGER.warn("Mod {} requires Minecraft version {} but current is {}, skipping", 
-                        modId, minecraftVersion, currentMinecraftVersion);
-                deleteDirectory(tempDir.toFile());
-                return false;
+            // 执行__init__.py，优先使用缓存的字节码
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "execute")) {
+                interpreter.exec(bytecodeCache.compile(modId, source, initPath));
+            }
+
+            // 从info.json创建PyModInfo
+            PyModInfo modInfo = new PyModInfo(modId, candidate.getInfo());
+
+            PyFabricLoader.LOGGER.info("Successfully loaded mod: {} - {}", modId, modInfo.getName());
+            return new LoadedMod(modInfo, interpreter, zipFile);
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.error("Failed to load mod: {}", modId, e);
+            return null;
+        }
+    }
+
+    private LoadedMod executeModExtracted(ModCandidate candidate) {
+        File zipFile = candidate.getFile();
+        String modId = candidate.getId();
+        PyFabricLoader.LOGGER.info("Loading mod: {}", modId);
+
+        try {
+            // 解压到以内容哈希为键的缓存目录，未变化的压缩包直接复用
+            File extractedDir;
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "extract")) {
+                // 哈希只在解压时才需要，由发现索引按需计算并记录
+                String hash = candidate.getHash() != null ? candidate.getHash() : discoveryIndex.getHash(zipFile);
+                extractedDir = extractionCache.extract(modId, zipFile, hash);
             }
 
             // 查找__init__.py
-            File initPy = new File(tempDir.toFile(), "__init__.py");
+            File initPy = new File(extractedDir, "__init__.py");
             if (!initPy.exists()) {
                 PyFabricLoader.LOGGER.warn("No __init__.py found in {}", zipFile.getName());
-                deleteDirectory(tempDir.toFile());
-                return false;
+                return null;
             }
 
-            // 创建新的解释器实例
-            PythonInterpreter interpreter = new PythonInterpreter();
-            interpreter.set("__name__", modId);
-            interpreter.set("ModInfos", new PyDictionary());
-            
-            // 添加临时目录到Python路径
-            interpreter.exec("import sys");
-            interpreter.exec("sys.path.append('" + tempDir.toAbsolutePath() + "')");
+            // 创建新的解释器实例，解压目录只加入该模组自己的Python路径
+            PythonInterpreter interpreter;
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "interpreter")) {
+                interpreter = interpreterFactory.create(modId, extractedDir.getAbsolutePath());
+                // 模组内的import同样经过字节码缓存，不在解压目录中写入$py.class
+                CachedModImporter.installForDirectory(interpreter.getSystemState(), extractedDir, bytecodeCache);
+            }
 
-            // 执行__init__.py
-            interpreter.execfile(initPy.getAbsolutePath());
+            // 执行__init__.py，优先使用缓存的字节码
+            try (LoadProfiler.Scope ignored = profiler.phase(modId, "execute")) {
+                interpreter.exec(bytecodeCache.compileFile(modId, initPy));
+            }
 
             // 从info.json创建PyModInfo
-            PyModInfo modInfo = new PyModInfo(modId, infoJson);
-            
-            // 存储mod信息和解释器
-            loadedMods.put(modId, modInfo);
-            interpreters.put(modId, interpreter);
+            PyModInfo modInfo = new PyModInfo(modId, candidate.getInfo());
             
             PyFabricLoader.LOGGER.info("Successfully loaded mod: {} - {}", modId, modInfo.getName());
-            return true;
+            return new LoadedMod(modInfo, interpreter, zipFile);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Failed to load mod: {}", modId, e);
-            return false;
+            return null;
         }
     }
 
-    public boolean reloadMod(String modName) {
+    public synchronized boolean reloadMod(String modName) {
+        // 支持 xxx、xxx.zip 和 xxx.py 三种写法
+        String modId = modName;
+        if (modId.toLowerCase().endsWith(".zip")) {
+            modId = modId.substring(0, modId.length() - 4);
+        } else if (modId.toLowerCase().endsWith(".py")) {
+            modId = modId.substring(0, modId.length() - 3);
+        }
+
         // 先移除旧的mod
-        unloadMod(modName);
+        unloadMod(modId);
         
         // 查找并加载新的mod
-        File zipFile = new File(modsDir, modName + ".zip");
-        if (!zipFile.exists()) {
-            // 尝试直接使用文件名
-            zipFile = new File(modsDir, modName);
-            if (!zipFile.exists()) {
-                return false;
+        File zipFile = new File(modsDir, modId + ".zip");
+        if (zipFile.exists()) {
+            return loadMod(zipFile);
+        }
+        File pyFile = new File(modsDir, modId + ".py");
+        if (pyFile.exists()) {
+            return loadSingleFileMod(pyFile);
+        }
+        // 尝试直接使用文件名
+        File modFile = new File(modsDir, modName);
+        if (!modFile.isFile()) {
+            return false;
+        }
+        return loadMod(modFile);
+    }
+
+    /**
+     * 热重载发生变化的模组以及依赖它们的模组
+     * 与启动时一样由discoverMods按模式、匹配规则和自定义顺序筛选，已不满足条件或文件已删除的模组只卸载；
+     * 依赖者先于被依赖的模组卸载，然后按ModLoadPlanner的批次顺序重新加载
+     * @param changedModIds 文件发生变化的模组
+     * @return 重新加载成功的模组
+     */
+    public synchronized List<String> hotReload(Collection<String> changedModIds) {
+        List<ModCandidate> candidates = discoverMods();
+        Set<String> affected = new LinkedHashSet<>(changedModIds);
+        boolean grew = true;
+        while (grew) {
+            grew = false;
+            for (ModCandidate candidate : candidates) {
+                if (!affected.contains(candidate.getId())
+                        && !Collections.disjoint(candidate.getDepends().keySet(), affected)) {
+                    grew |= affected.add(candidate.getId());
+                }
+            }
+        }
+
+        // 依赖者在被依赖的模组之后加入，倒序卸载
+        List<String> unloadOrder = new ArrayList<>(affected);
+        Collections.reverse(unloadOrder);
+        unloadOrder.forEach(this::unloadMod);
+
+        loadAllMods(candidate -> affected.contains(candidate.getId()), false);
+        List<String> reloaded = new ArrayList<>();
+        for (String modId : affected) {
+            if (loadedMods.containsKey(modId)) {
+                reloaded.add(modId);
+            }
+        }
+        return reloaded;
+    }
+
+    /**
+     * 查找源码中导入了指定模块的已加载模组
+     * 用于pyfabric/libs中的文件变化时判断需要重载哪些模组
+     */
+    public List<String> findModsImporting(String module) {
+        java.util.regex.Pattern importPattern = java.util.regex.Pattern.compile(
+                "^\\s*(import|from)\\s+[^#\\n]*\\b" + java.util.regex.Pattern.quote(module) + "\\b",
+                java.util.regex.Pattern.MULTILINE);
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, File> entry : modFiles.entrySet()) {
+            File file = entry.getValue();
+            try {
+                if (file.getName().toLowerCase().endsWith(".py")) {
+                    String source = new String(Files.readAllBytes(file.toPath()), java.nio.charset.StandardCharsets.UTF_8);
+                    if (importPattern.matcher(source).find()) {
+                        result.add(entry.getKey());
+                    }
+                    continue;
+                }
+                try (ZipFile zip = new ZipFile(file)) {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry zipEntry = entries.nextElement();
+                        if (!zipEntry.getName().endsWith(".py")) {
+                            continue;
+                        }
+                        try (InputStream in = zip.getInputStream(zipEntry)) {
+                            String source = new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+                            if (importPattern.matcher(source).find()) {
+                                result.add(entry.getKey());
+                                break;
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                PyFabricLoader.LOGGER.warn("Failed to scan mod {} for imports of {}", entry.getKey(), module, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从共享的sys.modules中移除模块及其子模块，下次导入时重新加载
+     */
+    public void purgeModules(Collection<String> modules) {
+        if (interpreterFactory == null) {
+            return;
+        }
+        PyObject sharedModules = interpreterFactory.getSharedModules();
+        for (PyObject key : sharedModules.invoke("keys").asIterable()) {
+            String name = key.toString();
+            for (String module : modules) {
+                if (name.equals(module) || name.startsWith(module + ".")) {
+                    sharedModules.__delitem__(key);
+                    break;
+                }
             }
         }
-        
-        return loadMod(zipFile);
     }
 
-    public void reloadAllMods() {
+    public synchronized void reloadAllMods() {
+        profiler = new LoadProfiler("reload");
         // 卸载所有mod
-        unloadAllMods();
+        try (LoadProfiler.Scope ignored = profiler.phase("mods.unload")) {
+            unloadAllMods();
+        }
         // 重新加载所有mod
         loadAllMods();
+        finishProfile();
+    }
+
+    /**
+     * 结束当前的性能记录并写出 pyfabric/profile-&lt;kind&gt;.json
+     */
+    private void finishProfile() {
+        LoadProfiler current = profiler;
+        current.finish();
+        profiles.put(current.getKind(), current);
+        current.writeReport(new File(pyfabricDir, "profile-" + current.getKind() + ".json"));
+        // 之后单独重载的模组不再计入本次记录，也不再累积记录
+        profiler = LoadProfiler.disabled("runtime");
+    }
+
+    /**
+     * 获取最近一次的性能记录
+     * @param kind startup 或 reload
+     * @return 性能记录，尚未产生时返回null
+     */
+    public LoadProfiler getProfile(String kind) {
+        return profiles.get(kind);
     }
 
-    public void unloadMod(String modId) {
+    public synchronized void unloadMod(String modId) {
         if (loadedMods.containsKey(modId)) {
             loadedMods.remove(modId);
+            dormantMods.remove(modId);
             PythonInterpreter interpreter = interpreters.remove(modId);
+            ModContext.unregister(modId);
             if (interpreter != null) {
                 interpreter.close();
             }
+            extractionCache.release(modId, modFiles.remove(modId));
+            CallbackWatchdog.getInstance().reset(modId);
+            PyCommandAPI.getInstance().unregisterMod(modId);
+            TickEventBus.getInstance().unregisterMod(modId);
             PyFabricLoader.LOGGER.info("Unloaded mod: {}", modId);
         }
     }
 
-    public void unloadAllMods() {
+    public synchronized void unloadAllMods() {
         for (String modId : new ArrayList<>(loadedMods.keySet())) {
             unloadMod(modId);
         }
     }
 
+    /**
+     * 模组回调的时间预算：info.json中的 "budget-ms" 优先，否则使用 Commands.BudgetMs
+     */
+    public long getCallbackBudgetMillis(String modId) {
+        PyModInfo info = modId != null ? loadedMods.get(modId) : null;
+        if (info != null && info.getBudgetMillis() >= 0) {
+            return info.getBudgetMillis();
+        }
+        return ConfigManager.getInstance().getInt("Commands.BudgetMs", 1000);
+    }
+
+    /**
+     * 模组每tick的时间预算：info.json中的 "tick-budget-ms" 优先，否则使用 Ticks.BudgetMs
+     */
+    public long getTickBudgetMillis(String modId) {
+        PyModInfo info = modId != null ? loadedMods.get(modId) : null;
+        if (info != null && info.getTickBudgetMillis() >= 0) {
+            return info.getTickBudgetMillis();
+        }
+        return ConfigManager.getInstance().getInt("Ticks.BudgetMs", 5);
+    }
+
     public List<PyModInfo> getLoadedMods() {
         return new ArrayList<>(loadedMods.values());
     }
 
     public String executePython(String code) {
+        StringWriter writer = new StringWriter();
+        String error = executePython(code, writer);
+        return error != null ? "Error: " + error : writer.toString();
+    }
+
+    /**
+     * 执行代码，输出在执行过程中写入指定的Writer
+     * @return 出错时返回错误信息，否则返回null
+     */
+    public String executePython(String code, Writer output) {
+        // exec同样受时间预算约束，避免死循环卡住服务器线程
+        CallbackWatchdog.Budget budget = CallbackWatchdog.getInstance().begin(null,
+                ConfigManager.getInstance().getInt("Commands.ExecBudgetMs", 10000));
+        PyObject previousOut = globalInterpreter.getSystemState().stdout;
+        PyObject previousErr = globalInterpreter.getSystemState().stderr;
         try {
-            StringWriter writer = new StringWriter();
-            globalInterpreter.setOut(writer);
-            globalInterpreter.setErr(writer);
+            globalInterpreter.setOut(output);
+            globalInterpreter.setErr(output);
             globalInterpreter.exec(code);
-            return writer.toString();
+            return null;
         } catch (Exception e) {
-            return "Error: " + e.getMessage();
+            String overrun = CallbackWatchdog.getInstance().end(budget);
+            budget = null;
+            return overrun != null ? overrun : e.getMessage();
+        } finally {
+            CallbackWatchdog.getInstance().end(budget);
+            restoreOutput(previousOut, previousErr);
         }
     }
 
     public String executePythonFile(String fileName) {
-        // 修改为执行pyfabric/files下的文件
+        StringWriter writer = new StringWriter();
+        String error = executePythonFile(fileName, writer);
+        return error != null ? error : writer.toString();
+    }
+
+    /**
+     * 执行pyfabric/files下的文件，输出在执行过程中写入指定的Writer
+     * @return 出错时返回错误信息，否则返回null
+     */
+    public String executePythonFile(String fileName, Writer output) {
         File pythonFile = new File(filesDir, fileName);
         if (!pythonFile.exists()) {
             return "File not found: " + fileName + " in " + filesDir.getAbsolutePath();
         }
 
+        // run与exec使用同样的时间预算
+        CallbackWatchdog.Budget budget = CallbackWatchdog.getInstance().begin(null,
+                ConfigManager.getInstance().getInt("Commands.ExecBudgetMs", 10000));
+        PyObject previousOut = globalInterpreter.getSystemState().stdout;
+        PyObject previousErr = globalInterpreter.getSystemState().stderr;
         try {
-            StringWriter writer = new StringWriter();
-            globalInterpreter.setOut(writer);
-            globalInterpreter.setErr(writer);
-            globalInterpreter.execfile(pythonFile.getAbsolutePath());
-            return writer.toString();
+            globalInterpreter.setOut(output);
+            globalInterpreter.setErr(output);
+            globalInterpreter.exec(bytecodeCache.compileFile("__main__", pythonFile));
+            return null;
         } catch (Exception e) {
-            return "Error executing " + fileName + ": " + e.getMessage();
+            String overrun = CallbackWatchdog.getInstance().end(budget);
+            budget = null;
+            return "Error executing " + fileName + ": " + (overrun != null ? overrun : e.getMessage());
+        } finally {
+            CallbackWatchdog.getInstance().end(budget);
+            restoreOutput(previousOut, previousErr);
         }
     }
 
-    private void extractZip(File zipFile, File targetDir) throws IOException {
-        try (ZipFile zip = new ZipFile(zipFile)) {
-            Enumeration<? extends ZipEntry> entries = zip.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                File entryFile = new File(targetDir, entry.getName());
-                
-                if (entry.isDirectory()) {
-                    entryFile.mkdirs();
-                } else {
-                    // 确保父目录存在
-                    entryFile.getParentFile().mkdirs();
-                    // 复制文件内容
-                    try (java.io.InputStream in = zip.getInputStream(entry);
-                         java.io.OutputStream out = new FileOutputStream(entryFile)) {
-                        byte[] buffer = new byte[1024];
-                        int len;
-                        while ((len = in.read(buffer)) > 0) {
-                            out.write(buffer, 0, len);
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * 恢复解释器原来的输出，避免之后模组回调中的print写入已经关闭的命令输出
+     */
+    private void restoreOutput(PyObject previousOut, PyObject previousErr) {
+        globalInterpreter.setOut(previousOut);
+        globalInterpreter.setErr(previousErr);
     }
 
-    private void deleteDirectory(File directory) {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    deleteDirectory(file);
-                } else {
-                    file.delete();
-                }
-            }
-        }
-        directory.delete();
+    /**
+     * 命令输出写入文件时使用的文件，位于pyfabric/files/output下
+     */
+    public File createOutputFile(String prefix) {
+        String timestamp = new java.text.SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new java.util.Date());
+        return new File(new File(filesDir, "output"), prefix + "-" + timestamp + ".log");
     }
-    
+
     /**
      * 从jar中提取jython相关文件到libs目录
+     * 根据清单只解压缺失或变化的条目；Preload.StdlibFromJar为true时不解压，直接从jar中导入标准库
      */
     private void extractJythonFromJar() {
         try {
-            // 检查jython是否已经存在
-            File jythonLibDir = new File(libsDir, "Lib");
-            if (jythonLibDir.exists() && jythonLibDir.isDirectory() && jythonLibDir.listFiles() != null && jythonLibDir.listFiles().length > 0) {
-                PyFabricLoader.LOGGER.info("Jython already exists in libs directory, skipping extraction");
-                return;
-            }
-            
-            PyFabricLoader.LOGGER.info("Extracting Jython resources to libs directory...");
-            
             // 确保libs目录存在
             libsDir.mkdirs();
-            
-            // 首先尝试直接从当前jar中提取Jython的Lib目录
-            try {
-                // 使用类加载器直接访问当前jar中的Jython资源
-                // 创建一个测试文件来确保目录可写
-                File testPy = new File(libsDir, "__init__.py");
-                try (FileOutputStream fos = new FileOutputStream(testPy)) {
+            File initPy = new File(libsDir, "__init__.py");
+            if (!initPy.exists()) {
+                try (FileOutputStream fos = new FileOutputStream(initPy)) {
                     fos.write("# Jython initialization file\n".getBytes());
                 }
-                
-                // 直接从项目的libs目录复制Jython jar到pyfabric/libs目录
-                File jythonJar = new File("libs/jython-slim-3.0.1-SNAPSHOT-all.jar");
-                if (jythonJar.exists()) {
-                    File targetJythonJar = new File(libsDir, "jython-slim-3.0.1-SNAPSHOT-all.jar");
-                    java.nio.file.Files.copy(jythonJar.toPath(), targetJythonJar.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                    PyFabricLoader.LOGGER.info("Copied Jython jar to libs directory");
-                    
-                    // 从复制的jar中提取Lib目录
-                    extractJythonFromSpecificJar(targetJythonJar.getAbsolutePath());
-                } else {
-                    PyFabricLoader.LOGGER.warn("Jython jar not found in project libs directory");
-                }
-            } catch (Exception e) {
-                PyFabricLoader.LOGGER.error("Error copying Jython resources", e);
             }
-            
-            PyFabricLoader.LOGGER.info("Jython resource extraction completed");
+
+            File jythonJar = locateJythonJar();
+            if (jythonJar == null) {
+                PyFabricLoader.LOGGER.warn("Jython jar not found in project libs directory");
+                return;
+            }
+
+            if (ConfigManager.getInstance().getBoolean("Preload.StdlibFromJar", false)) {
+                // 由zipimport直接读取jar中的Lib目录
+                stdlibPath = jythonJar.getAbsolutePath() + File.separator + "Lib";
+                PyFabricLoader.LOGGER.info("Serving Jython stdlib directly from {}", jythonJar.getName());
+                return;
+            }
+
+            File stdlibDir = new File(libsDir, "Lib");
+            int extracted = new JythonStdlibExtractor(stdlibDir).materialize(jythonJar);
+            stdlibPath = stdlibDir.getAbsolutePath();
+            PyFabricLoader.LOGGER.info("Jython resource extraction completed ({} files updated)", extracted);
         } catch (Exception e) {
             PyFabricLoader.LOGGER.error("Failed to extract Jython resources", e);
         }
     }
+
+    /**
+     * 查找用于提供标准库的Jython jar
+     * 优先使用项目libs目录中的jar（仅在变化时复制到pyfabric/libs），其次使用已复制的jar，
+     * 最后回退到合并了Jython的本模组jar
+     */
+    private File locateJythonJar() throws IOException {
+        File jythonJar = new File("libs/jython-slim-3.0.1-SNAPSHOT-all.jar");
+        File targetJythonJar = new File(libsDir, jythonJar.getName());
+        if (jythonJar.exists()) {
+            if (!targetJythonJar.exists() || targetJythonJar.length() != jythonJar.length()
+                    || targetJythonJar.lastModified() != jythonJar.lastModified()) {
+                Files.copy(jythonJar.toPath(), targetJythonJar.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                PyFabricLoader.LOGGER.info("Copied Jython jar to libs directory");
+            }
+            return targetJythonJar;
+        }
+        if (targetJythonJar.exists()) {
+            return targetJythonJar;
+        }
+        String path = findJythonJarPath();
+        if (path != null && path.endsWith(".jar") && new File(path).isFile()) {
+            return new File(path);
+        }
+        return null;
+    }
     
     /**
      * 查找Jython jar文件的路径
@@ -573,62 +1260,82 @@ public class PythonManager {
     }
     
     /**
-     * 从指定的Jython jar中提取文件到libs目录
+     * 已执行但尚未提交的模组
      */
-    private void extractJythonFromSpecificJar(String jarPath) throws IOException {
-        File jarFile = new File(jarPath);
-        if (!jarFile.exists()) {
-            PyFabricLoader.LOGGER.warn("Jython jar file not found: " + jarPath);
-            return;
+    private static class LoadedMod {
+        private final PyModInfo info;
+        private final PythonInterpreter interpreter;
+        private final File source;
+
+        private LoadedMod(PyModInfo info, PythonInterpreter interpreter, File source) {
+            this.info = info;
+            this.interpreter = interpreter;
+            this.source = source;
         }
-        
-        try (JarFile jar = new JarFile(jarFile)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                // 只提取Lib目录下的Python文件
-                if (entry.getName().startsWith("Lib/") && !entry.isDirectory()) {
-                    File destFile = new File(libsDir, entry.getName().substring(4)); // 去掉"Lib/"前缀
-                    destFile.getParentFile().mkdirs();
-                    
-                    try (java.io.InputStream in = jar.getInputStream(entry);
-                         java.io.OutputStream out = new FileOutputStream(destFile)) {
-                        byte[] buffer = new byte[8192];
-                        int len;
-                        while ((len = in.read(buffer)) > 0) {
-                            out.write(buffer, 0, len);
-                        }
-                    }
-                }
-            }
+    }
+
+    /**
+     * 模组加载线程，使用与初始化线程相同的类加载器以便Jython找到类
+     */
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PyFabric-Loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(PythonManager.class.getClassLoader());
+            return thread;
         }
     }
 
     public static class PyModInfo {
+        public enum State { LOADED, DORMANT, LOADING }
+
         private final String id;
         private final String name;
         private final String version;
         private final String description;
+        private final State state;
+        private final long budgetMillis;
+        private final long tickBudgetMillis;
 
         // 从info.json的JsonObject创建
         public PyModInfo(String id, JsonObject infoJson) {
+            this(id, infoJson, State.LOADED);
+        }
+
+        public PyModInfo(String id, JsonObject infoJson, State state) {
             this.id = id;
+            this.state = state;
             this.name = infoJson.has("name") ? infoJson.get("name").getAsString() : id;
             this.version = infoJson.has("version") ? infoJson.get("version").getAsString() : "1.0.0";
             this.description = infoJson.has("description") ? infoJson.get("description").getAsString() : "";
+            this.budgetMillis = infoJson.has("budget-ms") ? infoJson.get("budget-ms").getAsLong() : -1;
+            this.tickBudgetMillis = infoJson.has("tick-budget-ms") ? infoJson.get("tick-budget-ms").getAsLong() : -1;
         }
 
         // 兼容旧版从PyDictionary创建的方式
         public PyModInfo(String id, PyDictionary modInfos) {
             this.id = id;
+            this.state = State.LOADED;
             this.name = modInfos.get("name") != null ? modInfos.get("name").toString() : id;
             this.version = modInfos.get("version") != null ? modInfos.get("version").toString() : "1.0.0";
             this.description = modInfos.get("description") != null ? modInfos.get("description").toString() : "";
+            Object budget = modInfos.get("budget-ms");
+            this.budgetMillis = budget instanceof Number ? ((Number) budget).longValue() : -1;
+            Object tickBudget = modInfos.get("tick-budget-ms");
+            this.tickBudgetMillis = tickBudget instanceof Number ? ((Number) tickBudget).longValue() : -1;
         }
 
         public String getId() { return id; }
         public String getName() { return name; }
         public String getVersion() { return version; }
         public String getDescription() { return description; }
+        public State getState() { return state; }
+        /** 回调的时间预算（毫秒），未设置时为-1 */
+        public long getBudgetMillis() { return budgetMillis; }
+        /** 每tick处理器的时间预算（毫秒），未设置时为-1 */
+        public long getTickBudgetMillis() { return tickBudgetMillis; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package com.gvsds.pyfabricloader;
+
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.server.command.ServerCommandSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * 由Python函数提供的参数补全
+ * 函数以 (source, prefix) 调用，返回字符串列表，在AsyncCommandExecutor中运行，不占用服务器线程。
+ * 结果按执行者和已输入的前缀缓存 Commands.SuggestionTtlMs 毫秒，最多保留 Commands.SuggestionCacheSize 条；
+ * 同一前缀的并发请求共用同一次调用。返回的候选项再按前缀过滤，函数可以不处理前缀。
+ */
+public class PythonSuggestionProvider implements SuggestionProvider<ServerCommandSource> {
+    private final String modId;
+    private final BiFunction<Object, Object, Object> function;
+    private final long ttlNanos;
+    private final Map<String, CacheEntry> cache;
+
+    @SuppressWarnings("unchecked")
+    public PythonSuggestionProvider(String modId, Object function) {
+        this.modId = modId;
+        this.function = PyCallables.adapt(function, BiFunction.class);
+        ConfigManager config = ConfigManager.getInstance();
+        this.ttlNanos = config.getInt("Commands.SuggestionTtlMs", 2000) * 1_000_000L;
+        int maxEntries = Math.max(1, config.getInt("Commands.SuggestionCacheSize", 256));
+        this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public String getModId() {
+        return modId;
+    }
+
+    @Override
+    public CompletableFuture<Suggestions> getSuggestions(CommandContext<ServerCommandSource> context, SuggestionsBuilder builder) {
+        ServerCommandSource source = context.getSource();
+        String prefix = builder.getRemaining();
+        return candidates(source, prefix).handle((candidates, error) -> {
+            if (candidates != null) {
+                String remaining = prefix.toLowerCase(Locale.ROOT);
+                for (String candidate : candidates) {
+                    if (CommandSource.shouldSuggest(remaining, candidate.toLowerCase(Locale.ROOT))) {
+                        builder.suggest(candidate);
+                    }
+                }
+            }
+            return builder.build();
+        });
+    }
+
+    private CompletableFuture<List<String>> candidates(ServerCommandSource source, String prefix) {
+        String key = source.getName() + '\n' + prefix;
+        long now = System.nanoTime();
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry != null && now - entry.createdAt < ttlNanos) {
+                return entry.future;
+            }
+            // 失败的结果同样缓存到过期，避免出错的函数在每次按键时都被调用
+            CompletableFuture<List<String>> future = AsyncCommandExecutor.getInstance().supply(() -> call(source, prefix));
+            cache.put(key, new CacheEntry(future, now));
+            return future;
+        }
+    }
+
+    private List<String> call(ServerCommandSource source, String prefix) {
+        ModContext previousMod = PythonManager.enterMod(modId);
+        // supply的超时只结束Future，函数本身由watchdog在同样的时间后中止
+        CallbackWatchdog.Budget budget = CallbackWatchdog.getInstance().begin(modId, AsyncCommandExecutor.getInstance().getTimeoutMillis());
+        try {
+            return toStrings(function.apply(source, prefix));
+        } catch (Exception e) {
+            PyFabricLoader.LOGGER.warn("Suggestion function of {} failed for '{}': {}", modId, prefix, e.getMessage());
+            return Collections.emptyList();
+        } finally {
+            CallbackWatchdog.getInstance().end(budget);
+            PythonManager.exitMod(previousMod);
+        }
+    }
+
+    private static List<String> toStrings(Object result) {
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        if (result instanceof String) {
+            return Collections.singletonList((String) result);
+        }
+        List<String> strings = new ArrayList<>();
+        if (result instanceof Iterable) {
+            for (Object element : (Iterable<?>) result) {
+                if (element != null) {
+                    strings.add(element.toString());
+                }
+            }
+        } else {
+            strings.add(result.toString());
+        }
+        return strings;
+    }
+
+    private static final class CacheEntry {
+        private final CompletableFuture<List<String>> future;
+        private final long createdAt;
+
+        private CacheEntry(CompletableFuture<List<String>> future, long createdAt) {
+            this.future = future;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.gvsds.pyfabricloader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务器tick事件
+ * Python模组通过 PyCommandAPI.onTickStart/onTickEnd 订阅，处理器在每个tick开始或结束时在服务器线程上调用。
+ * 处理器保存在数组快照中，订阅和取消时整体替换数组，分发时只遍历数组，不复制处理器列表。
+ * 每个模组每tick有时间预算（info.json中的 "tick-budget-ms"，否则 Ticks.BudgetMs，0表示不限制），
+ * 模组在本tick的耗时用完预算后，它剩余的处理器推迟到下一tick优先运行；超出预算的tick计为一次超时。
+ * 单个处理器运行超过预算的 Ticks.HardCapFactor 倍时由CallbackWatchdog中止，避免一个处理器卡住服务器线程。
+ */
+public class TickEventBus {
+    private static final TickEventBus INSTANCE = new TickEventBus();
+    private static final Handler[] EMPTY = new Handler[0];
+
+    public enum Phase { START, END }
+
+    private volatile Handler[] startHandlers = EMPTY;
+    private volatile Handler[] endHandlers = EMPTY;
+    private final Map<String, ModTicks> mods = new ConcurrentHashMap<>();
+    // 只在服务器线程读写
+    private long tick;
+
+    private TickEventBus() {
+    }
+
+    public static TickEventBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 取消订阅的句柄
+     */
+    public interface Subscription {
+        void cancel();
+    }
+
+    /**
+     * 订阅tick事件
+     * @param modId 所属模组，为null时归入 "exec"
+     * @param handler 处理器，在服务器线程上调用
+     */
+    public Subscription subscribe(String modId, Phase phase, Runnable handler) {
+        String owner = modId != null ? modId : "exec";
+        ModTicks mod = mods.computeIfAbsent(owner, ModTicks::new);
+        Handler subscription = new Handler(mod, phase, handler);
+        synchronized (this) {
+            setHandlers(phase, append(getHandlers(phase), subscription));
+            mod.handlers++;
+        }
+        return subscription;
+    }
+
+    /**
+     * 移除模组的所有处理器和统计，在卸载模组时调用
+     */
+    public synchronized void unregisterMod(String modId) {
+        ModTicks mod = mods.remove(modId);
+        if (mod == null) {
+            return;
+        }
+        for (Phase phase : Phase.values()) {
+            Handler[] handlers = getHandlers(phase);
+            List<Handler> kept = new ArrayList<>(handlers.length);
+            for (Handler handler : handlers) {
+                if (handler.mod == mod) {
+                    handler.cancelled = true;
+                } else {
+                    kept.add(handler);
+                }
+            }
+            setHandlers(phase, kept.toArray(EMPTY));
+        }
+    }
+
+    private synchronized void remove(Handler target) {
+        Handler[] handlers = getHandlers(target.phase);
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i] == target) {
+                Handler[] copy = new Handler[handlers.length - 1];
+                System.arraycopy(handlers, 0, copy, 0, i);
+                System.arraycopy(handlers, i + 1, copy, i, handlers.length - i - 1);
+                setHandlers(target.phase, copy);
+                target.mod.handlers--;
+                return;
+            }
+        }
+    }
+
+    private Handler[] getHandlers(Phase phase) {
+        return phase == Phase.START ? startHandlers : endHandlers;
+    }
+
+    private void setHandlers(Phase phase, Handler[] handlers) {
+        if (phase == Phase.START) {
+            startHandlers = handlers;
+        } else {
+            endHandlers = handlers;
+        }
+    }
+
+    private static Handler[] append(Handler[] handlers, Handler handler) {
+        Handler[] copy = Arrays.copyOf(handlers, handlers.length + 1);
+        copy[handlers.length] = handler;
+        return copy;
+    }
+
+    /**
+     * 分发tick事件，由Fabric的ServerTickEvents在服务器线程上调用
+     */
+    public void dispatch(Phase phase) {
+        if (phase == Phase.START) {
+            tick++;
+        }
+        Handler[] handlers = phase == Phase.START ? startHandlers : endHandlers;
+        if (handlers.length == 0) {
+            return;
+        }
+        // 先运行上一tick被推迟的处理器，再运行其余的
+        for (Handler handler : handlers) {
+            if (handler.deferred) {
+                run(handler);
+            }
+        }
+        for (Handler handler : handlers) {
+            if (!handler.deferred && handler.lastTick != tick) {
+                run(handler);
+            }
+        }
+    }
+
+    private void run(Handler handler) {
+        if (handler.cancelled) {
+            return;
+        }
+        ModTicks mod = handler.mod;
+        if (mod.tick != tick) {
+            mod.startTick(tick);
+        }
+        if (mod.budgetNanos > 0 && mod.spentNanos >= mod.budgetNanos) {
+            handler.deferred = true;
+            mod.deferrals++;
+            return;
+        }
+        handler.deferred = false;
+        handler.lastTick = tick;
+
+        ModContext previousMod = PythonManager.enterMod(mod.modId);
+        CallbackWatchdog.Budget budget = CallbackWatchdog.getInstance().begin(mod.modId, mod.hardCapMillis);
+        long start = System.nanoTime();
+        try {
+            handler.callback.run();
+        } catch (Exception e) {
+            if (CallbackWatchdog.getInstance().end(budget) != null) {
+                // 已由watchdog记录调用栈
+                mod.aborts++;
+            } else {
+                mod.errors++;
+                if (handler.errors++ == 0) {
+                    PyFabricLoader.LOGGER.error("Tick handler of {} failed, further errors are only counted: {}", mod.modId, e.getMessage(), e);
+                }
+            }
+            budget = null;
+        } finally {
+            CallbackWatchdog.getInstance().end(budget);
+            PythonManager.exitMod(previousMod);
+            mod.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 各模组的tick统计，按平均耗时从高到低排序
+     * @param modId 只返回该模组，为null时返回全部
+     */
+    public List<Status> status(String modId) {
+        List<Status> result = new ArrayList<>();
+        for (ModTicks mod : mods.values()) {
+            if (modId == null || modId.equals(mod.modId)) {
+                result.add(mod.status());
+            }
+        }
+        result.sort(Comparator.comparingDouble((Status s) -> s.averageMillis).reversed());
+        return result;
+    }
+
+    /**
+     * 一个订阅的处理器
+     */
+    private final class Handler implements Subscription {
+        private final ModTicks mod;
+        private final Phase phase;
+        private final Runnable callback;
+        private volatile boolean cancelled;
+        private boolean deferred;
+        private long lastTick;
+        private long errors;
+
+        private Handler(ModTicks mod, Phase phase, Runnable callback) {
+            this.mod = mod;
+            this.phase = phase;
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            remove(this);
+        }
+    }
+
+    /**
+     * 模组的预算和统计，除handlers外只在服务器线程修改
+     */
+    private static final class ModTicks {
+        private final String modId;
+        private long budgetNanos = -1;
+        private long hardCapMillis;
+        private int handlers;
+        private long tick;
+        private long spentNanos;
+        private boolean overrun;
+        private long activeTicks;
+        private long totalNanos;
+        private long maxTickNanos;
+        private long overruns;
+        private long deferrals;
+        private long errors;
+        private long aborts;
+
+        private ModTicks(String modId) {
+            this.modId = modId;
+        }
+
+        private void startTick(long currentTick) {
+            if (budgetNanos < 0) {
+                // 第一次运行时模组信息已登记完成
+                long budgetMillis = PythonManager.getInstance().getTickBudgetMillis(modId);
+                budgetNanos = budgetMillis * 1_000_000L;
+                hardCapMillis = budgetMillis * Math.max(0, ConfigManager.getInstance().getInt("Ticks.HardCapFactor", 10));
+            }
+            tick = currentTick;
+            spentNanos = 0;
+            overrun = false;
+            activeTicks++;
+        }
+
+        private void record(long nanos) {
+            spentNanos += nanos;
+            totalNanos += nanos;
+            if (spentNanos > maxTickNanos) {
+                maxTickNanos = spentNanos;
+            }
+            if (budgetNanos > 0 && spentNanos > budgetNanos && !overrun) {
+                overrun = true;
+                if (overruns++ == 0) {
+                    PyFabricLoader.LOGGER.warn("Tick handlers of {} exceeded their {} ms budget, remaining handlers are deferred to the next tick",
+                            modId, budgetNanos / 1_000_000L);
+                }
+            }
+        }
+
+        private Status status() {
+            return new Status(modId, handlers, budgetNanos / 1_000_000.0,
+                    activeTicks > 0 ? totalNanos / 1_000_000.0 / activeTicks : 0, maxTickNanos / 1_000_000.0,
+                    overruns, deferrals, errors, aborts);
+        }
+    }
+
+    /**
+     * 模组的tick统计快照，时间单位为毫秒
+     */
+    public static class Status {
+        public final String modId;
+        public final int handlers;
+        public final double budgetMillis;
+        public final double averageMillis;
+        public final double maxMillis;
+        public final long overruns;
+        public final long deferrals;
+        public final long errors;
+        public final long aborts;
+
+        private Status(String modId, int handlers, double budgetMillis, double averageMillis, double maxMillis,
+                       long overruns, long deferrals, long errors, long aborts) {
+            this.modId = modId;
+            this.handlers = handlers;
+            this.budgetMillis = budgetMillis;
+            this.averageMillis = averageMillis;
+            this.maxMillis = maxMillis;
+            this.overruns = overruns;
+            this.deferrals = deferrals;
+            this.errors = errors;
+            this.aborts = aborts;
+        }
+
+        @Override
+        public String toString() {
+            String budget = budgetMillis > 0 ? String.format("%.1f ms", budgetMillis) : budgetMillis == 0 ? "unlimited" : "-";
+            return String.format("%s: %d handlers, budget %s, avg %.3f ms, max %.3f ms, %d overruns, %d deferred, %d errors, %d aborted",
+                    modId, handlers, budget, averageMillis, maxMillis, overruns, deferrals, errors, aborts);
+        }
+    }
+}
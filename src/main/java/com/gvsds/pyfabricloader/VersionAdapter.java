@@ -0,0 +1,162 @@
+package com.gvsds.pyfabricloader;
+
+import net.minecraft.network.packet.s2c.play.SubtitleS2CPacket;
+import net.minecraft.network.packet.s2c.play.TitleFadeS2CPacket;
+import net.minecraft.network.packet.s2c.play.TitleS2CPacket;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
+
+/**
+ * 不同Minecraft版本之间有差异的API的统一入口
+ * 类加载时按方法签名（而不是名称，生产环境中的方法名是intermediary名称）探测一次可用的API，
+ * 之后每个操作都直接调用绑定好的MethodHandle或lambda，不再反射查找，也不依赖异常判断版本。
+ * CommandHandler、ConfigManager和PyCommandAPI共用这里的实现。
+ */
+public final class VersionAdapter {
+    private static String feedbackBinding = "none";
+    private static final FeedbackSender FEEDBACK = bindFeedback();
+
+    private VersionAdapter() {
+    }
+
+    @FunctionalInterface
+    private interface FeedbackSender {
+        void send(ServerCommandSource source, Text message, boolean broadcast) throws Throwable;
+    }
+
+    /**
+     * 在启动时调用，提前完成探测并记录结果
+     */
+    public static void initialize() {
+        PyFabricLoader.LOGGER.info("Version adapter ready for Minecraft {} (sendFeedback: {})",
+                VersionHelper.getMinecraftVersion(), feedbackBinding);
+    }
+
+    /**
+     * 1.20起 sendFeedback 的参数从 Text 改为 Supplier&lt;Text&gt;
+     */
+    private static FeedbackSender bindFeedback() {
+        Method textVariant = null;
+        Method supplierVariant = null;
+        for (Method method : ServerCommandSource.class.getMethods()) {
+            Class<?>[] parameters = method.getParameterTypes();
+            if (Modifier.isStatic(method.getModifiers()) || method.getReturnType() != void.class
+                    || parameters.length != 2 || parameters[1] != boolean.class) {
+                continue;
+            }
+            if (parameters[0] == Text.class) {
+                textVariant = method;
+            } else if (parameters[0] == Supplier.class) {
+                supplierVariant = method;
+            }
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            boolean preferSupplier = VersionHelper.isVersionAtLeast("1.20");
+            if (supplierVariant != null && (preferSupplier || textVariant == null)) {
+                MethodHandle handle = lookup.unreflect(supplierVariant);
+                feedbackBinding = "Supplier<Text>";
+                return (source, message, broadcast) -> handle.invoke(source, (Supplier<Text>) () -> message, broadcast);
+            }
+            if (textVariant != null) {
+                MethodHandle handle = lookup.unreflect(textVariant);
+                feedbackBinding = "Text";
+                return (source, message, broadcast) -> handle.invoke(source, message, broadcast);
+            }
+        } catch (IllegalAccessException e) {
+            PyFabricLoader.LOGGER.error("Failed to bind sendFeedback", e);
+        }
+        PyFabricLoader.LOGGER.error("No compatible sendFeedback method found, falling back to system messages");
+        return (source, message, broadcast) -> source.getServer().sendMessage(message);
+    }
+
+    /**
+     * 创建文本组件，Text.of 在支持的所有版本中都存在
+     */
+    public static Text text(String message) {
+        return Text.of(message);
+    }
+
+    /**
+     * 向命令来源发送反馈
+     */
+    public static void sendFeedback(ServerCommandSource source, String message, boolean broadcast) {
+        try {
+            FEEDBACK.send(source, text(message), broadcast);
+        } catch (Throwable e) {
+            PyFabricLoader.LOGGER.error("Error sending feedback: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 向命令来源发送错误信息
+     */
+    public static void sendError(ServerCommandSource source, String message) {
+        source.sendError(text(message));
+    }
+
+    /**
+     * 向一组玩家显示标题
+     * 时间、副标题和标题数据包各只构建一次，所有玩家共用同一个数据包实例
+     * @param subtitle 副标题，为null时不发送
+     * @return 发送的玩家数
+     */
+    public static int sendTitle(Iterable<ServerPlayerEntity> players, String title, String subtitle, int fadeIn, int stay, int fadeOut) {
+        long start = System.nanoTime();
+        TitleFadeS2CPacket timing = new TitleFadeS2CPacket(fadeIn, stay, fadeOut);
+        SubtitleS2CPacket subtitlePacket = subtitle != null ? new SubtitleS2CPacket(text(subtitle)) : null;
+        TitleS2CPacket titlePacket = new TitleS2CPacket(text(title != null ? title : ""));
+        int sent = 0;
+        for (ServerPlayerEntity player : players) {
+            // 副标题必须在标题之前发送，客户端在收到标题时显示已收到的副标题
+            player.networkHandler.sendPacket(timing);
+            if (subtitlePacket != null) {
+                player.networkHandler.sendPacket(subtitlePacket);
+            }
+            player.networkHandler.sendPacket(titlePacket);
+            sent++;
+        }
+        PyFabricLoader.LOGGER.debug("Sent title to {} players in {} us", sent, (System.nanoTime() - start) / 1000);
+        return sent;
+    }
+
+    /**
+     * 向一组玩家发送聊天消息，文本组件只构建一次
+     * @return 发送的玩家数
+     */
+    public static int sendMessage(Iterable<ServerPlayerEntity> players, String message) {
+        long start = System.nanoTime();
+        Text messageText = text(message);
+        int sent = 0;
+        for (ServerPlayerEntity player : players) {
+            player.sendMessage(messageText, false);
+            sent++;
+        }
+        PyFabricLoader.LOGGER.debug("Sent message to {} players in {} us", sent, (System.nanoTime() - start) / 1000);
+        return sent;
+    }
+
+    /**
+     * 获取当前服务器，由服务器生命周期事件记录
+     * @return 服务器实例，尚未启动或已停止时返回null
+     */
+    public static MinecraftServer server() {
+        return PyCommandAPI.getInstance().getServer();
+    }
+
+    /**
+     * 按名称查找在线玩家
+     * @return 玩家，服务器未启动或玩家不在线时返回null
+     */
+    public static ServerPlayerEntity findPlayer(String playerName) {
+        return OnlinePlayers.getInstance().get(playerName);
+    }
+}
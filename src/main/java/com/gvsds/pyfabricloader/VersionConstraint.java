@@ -0,0 +1,400 @@
+package com.gvsds.pyfabricloader;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 版本约束表达式
+ * 表达式只解析一次，按原文缓存为不可变的匹配器；版本字符串同样只解析一次。
+ * PythonManager和VersionHelper共用这里的比较规则，因此两者对同一版本的判断一致。
+ * 支持的格式：
+ * - >=1.20.1、>1.20.1、<=1.20.1、<1.20.1、=1.20.1、!=1.20.1，没有前缀时等同于 =
+ * - = 和 != 按原文精确比较（=1.19 不匹配 1.19.0），与此前的行为一致
+ * - 空格分隔的多个条件需同时满足：>=1.18 <1.21
+ * - 区间（包含两端）：1.18 - 1.20.4
+ * - 通配：1.20.x、1.20.*、*
+ * - 任一满足：1.18.2 || >=1.20
+ * - 排除列表：!=["1.20.1", "1.34.7"]
+ * 版本的数字部分逐段比较，缺少的段视为0；"-"之后为预发布标记，预发布版本低于对应的正式版本；"+"之后的构建信息被忽略。
+ * 没有数字部分的版本（如 unknown）只参与 = 和 != 的判断，范围条件和通配对其总是不成立（!=1.20.x 成立）。
+ */
+public final class VersionConstraint {
+    private static final Map<String, VersionConstraint> CONSTRAINTS = new ConcurrentHashMap<>();
+    private static final Map<String, Version> VERSIONS = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED = 4096;
+
+    /**
+     * 匹配任意版本的约束
+     */
+    public static final VersionConstraint ANY = new VersionConstraint("*", new Term[][]{new Term[0]});
+
+    private final String expression;
+    private final Term[][] alternatives;
+
+    private VersionConstraint(String expression, Term[][] alternatives) {
+        this.expression = expression;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * 获取表达式对应的约束，相同的表达式返回同一个实例
+     * @throws IllegalArgumentException 表达式无法解析时抛出
+     */
+    public static VersionConstraint parse(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            return ANY;
+        }
+        VersionConstraint constraint = CONSTRAINTS.get(expression);
+        if (constraint == null) {
+            constraint = compile(expression);
+            if (CONSTRAINTS.size() >= MAX_CACHED) {
+                CONSTRAINTS.clear();
+            }
+            CONSTRAINTS.putIfAbsent(expression, constraint);
+        }
+        return constraint;
+    }
+
+    /**
+     * 比较两个版本
+     * @return 如果version1大于version2返回正数，如果小于返回负数，如果等于返回0
+     */
+    public static int compare(String version1, String version2) {
+        return Version.of(version1).compareTo(Version.of(version2));
+    }
+
+    public boolean test(String version) {
+        Version parsed = Version.of(version);
+        for (Term[] terms : alternatives) {
+            boolean matched = true;
+            for (Term term : terms) {
+                if (!term.test(parsed)) {
+                    matched = false;
+                    break;
+                }
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static VersionConstraint compile(String expression) {
+        String[] parts = expression.split("\\|\\|");
+        Term[][] alternatives = new Term[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.isEmpty()) {
+                throw new IllegalArgumentException("Empty alternative in version constraint: " + expression);
+            }
+            alternatives[i] = part.startsWith("!=[") ? compileExclusions(part) : compileTerms(part, expression);
+        }
+        return new VersionConstraint(expression, alternatives);
+    }
+
+    private static Term[] compileExclusions(String part) {
+        JsonArray versions = JsonParser.parseString(part.substring(2)).getAsJsonArray();
+        Term[] terms = new Term[versions.size()];
+        int index = 0;
+        for (JsonElement element : versions) {
+            terms[index++] = new Term(Op.NE, Version.of(element.getAsString()));
+        }
+        return terms;
+    }
+
+    private static Term[] compileTerms(String part, String expression) {
+        String[] tokens = part.split("\\s+");
+        // 区间：a - b
+        if (tokens.length == 3 && tokens[1].equals("-")) {
+            return new Term[]{new Term(Op.GE, Version.of(tokens[0])), new Term(Op.LE, Version.of(tokens[2]))};
+        }
+        List<Term> terms = new ArrayList<>();
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            // 运算符和版本之间允许有空格，如 ">= 1.20"
+            if (isOperatorOnly(token)) {
+                if (i + 1 >= tokens.length) {
+                    throw new IllegalArgumentException("Missing version after " + token + " in version constraint: " + expression);
+                }
+                token = token + tokens[++i];
+            }
+            addTerm(terms, token);
+        }
+        return terms.toArray(new Term[0]);
+    }
+
+    private static boolean isOperatorOnly(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c != '<' && c != '>' && c != '=' && c != '!') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addTerm(List<Term> terms, String token) {
+        Op op;
+        int length;
+        if (token.startsWith(">=")) {
+            op = Op.GE; length = 2;
+        } else if (token.startsWith("<=")) {
+            op = Op.LE; length = 2;
+        } else if (token.startsWith("!=")) {
+            op = Op.NE; length = 2;
+        } else if (token.startsWith("==")) {
+            op = Op.EQ; length = 2;
+        } else if (token.startsWith(">")) {
+            op = Op.GT; length = 1;
+        } else if (token.startsWith("<")) {
+            op = Op.LT; length = 1;
+        } else if (token.startsWith("=")) {
+            op = Op.EQ; length = 1;
+        } else {
+            op = Op.EQ; length = 0;
+        }
+        String operand = token.substring(length);
+        if (operand.isEmpty()) {
+            throw new IllegalArgumentException("Missing version in version constraint term: " + token);
+        }
+
+        // 通配：1.20.x 相当于 >=1.20 <1.21
+        String prefix = wildcardPrefix(operand);
+        if (prefix == null) {
+            terms.add(new Term(op, Version.of(operand)));
+        } else if (prefix.isEmpty()) {
+            if (op == Op.NE) {
+                terms.add(Term.NONE);
+            }
+        } else if (!Version.of(prefix).isNumeric()) {
+            throw new IllegalArgumentException("Wildcard version must start with a number: " + token);
+        } else if (op == Op.EQ || op == Op.NE) {
+            Version lower = Version.of(prefix);
+            int[] upperNumbers = Arrays.copyOf(lower.numbers, lower.numbers.length);
+            upperNumbers[upperNumbers.length - 1]++;
+            Version upper = new Version(prefix, upperNumbers, null);
+            if (op == Op.EQ) {
+                terms.add(new Term(Op.GE, lower));
+                terms.add(new Term(Op.LT, upper));
+            } else {
+                terms.add(new Term(Op.OUTSIDE, lower, upper));
+            }
+        } else {
+            terms.add(new Term(op, Version.of(prefix)));
+        }
+    }
+
+    /**
+     * @return 通配版本的固定前缀，"*"返回空字符串，不是通配时返回null
+     */
+    private static String wildcardPrefix(String operand) {
+        if (operand.equals("*") || operand.equalsIgnoreCase("x")) {
+            return "";
+        }
+        if (operand.endsWith(".*") || operand.endsWith(".x") || operand.endsWith(".X")) {
+            String prefix = operand.substring(0, operand.length() - 2);
+            return wildcardPrefix(prefix) != null ? wildcardPrefix(prefix) : prefix;
+        }
+        return null;
+    }
+
+    private enum Op { EQ, NE, GT, GE, LT, LE, OUTSIDE, NEVER }
+
+    private static final class Term {
+        private static final Term NONE = new Term(Op.NEVER, null);
+
+        private final Op op;
+        private final Version version;
+        private final Version upper;
+
+        private Term(Op op, Version version) {
+            this(op, version, null);
+        }
+
+        private Term(Op op, Version version, Version upper) {
+            this.op = op;
+            this.version = version;
+            this.upper = upper;
+        }
+
+        private boolean test(Version current) {
+            switch (op) {
+                case NEVER: return false;
+                case EQ: return current.raw.equals(version.raw);
+                case NE: return !current.raw.equals(version.raw);
+                default: break;
+            }
+            if (!current.isNumeric() || !version.isNumeric()) {
+                // 无法比较大小的版本不在任何范围内
+                return op == Op.OUTSIDE;
+            }
+            int result = current.compareTo(version);
+            switch (op) {
+                case GT: return result > 0;
+                case GE: return result >= 0;
+                case LT: return result < 0;
+                case LE: return result <= 0;
+                case OUTSIDE: return result < 0 || current.compareTo(upper) >= 0;
+                default: return false;
+            }
+        }
+    }
+
+    /**
+     * 解析后的版本号
+     */
+    static final class Version implements Comparable<Version> {
+        private final String raw;
+        private final int[] numbers;
+        private final Object[] preRelease;
+
+        private Version(String raw, int[] numbers, Object[] preRelease) {
+            this.raw = raw;
+            this.numbers = numbers;
+            this.preRelease = preRelease;
+        }
+
+        static Version of(String text) {
+            String key = text == null ? "" : text.trim();
+            Version version = VERSIONS.get(key);
+            if (version == null) {
+                version = parseVersion(key);
+                if (VERSIONS.size() >= MAX_CACHED) {
+                    VERSIONS.clear();
+                }
+                VERSIONS.putIfAbsent(key, version);
+            }
+            return version;
+        }
+
+        private static Version parseVersion(String text) {
+            String value = text;
+            if (value.length() > 1 && (value.charAt(0) == 'v' || value.charAt(0) == 'V') && Character.isDigit(value.charAt(1))) {
+                value = value.substring(1);
+            }
+            int plus = value.indexOf('+');
+            if (plus >= 0) {
+                value = value.substring(0, plus);
+            }
+
+            // 数字部分：以点分隔的数字段
+            List<Integer> numbers = new ArrayList<>();
+            int index = 0;
+            while (index < value.length() && Character.isDigit(value.charAt(index))) {
+                int start = index;
+                while (index < value.length() && Character.isDigit(value.charAt(index))) {
+                    index++;
+                }
+                numbers.add(parseNumber(value.substring(start, index)));
+                if (index + 1 < value.length() && value.charAt(index) == '.' && Character.isDigit(value.charAt(index + 1))) {
+                    index++;
+                } else {
+                    break;
+                }
+            }
+            if (numbers.isEmpty()) {
+                return new Version(text, new int[0], null);
+            }
+            int[] parsedNumbers = new int[numbers.size()];
+            for (int i = 0; i < parsedNumbers.length; i++) {
+                parsedNumbers[i] = numbers.get(i);
+            }
+            return new Version(text, parsedNumbers, parsePreRelease(value.substring(index)));
+        }
+
+        /**
+         * 预发布标记按 . - _ 空格以及字母与数字的交界拆分，数字标识按数值比较
+         */
+        private static Object[] parsePreRelease(String rest) {
+            List<Object> identifiers = new ArrayList<>();
+            int index = 0;
+            while (index < rest.length()) {
+                char c = rest.charAt(index);
+                if (!Character.isLetterOrDigit(c)) {
+                    index++;
+                    continue;
+                }
+                int start = index;
+                boolean digit = Character.isDigit(c);
+                while (index < rest.length() && Character.isLetterOrDigit(rest.charAt(index))
+                        && Character.isDigit(rest.charAt(index)) == digit) {
+                    index++;
+                }
+                String identifier = rest.substring(start, index);
+                identifiers.add(digit ? (Object) parseNumber(identifier) : identifier.toLowerCase());
+            }
+            return identifiers.isEmpty() ? null : identifiers.toArray();
+        }
+
+        private static int parseNumber(String digits) {
+            try {
+                return Integer.parseInt(digits);
+            } catch (NumberFormatException e) {
+                return Integer.MAX_VALUE;
+            }
+        }
+
+        boolean isNumeric() {
+            return numbers.length > 0;
+        }
+
+        @Override
+        public int compareTo(Version other) {
+            int length = Math.max(numbers.length, other.numbers.length);
+            for (int i = 0; i < length; i++) {
+                int a = i < numbers.length ? numbers[i] : 0;
+                int b = i < other.numbers.length ? other.numbers[i] : 0;
+                if (a != b) {
+                    return Integer.compare(a, b);
+                }
+            }
+            // 正式版本高于预发布版本
+            if (preRelease == null || other.preRelease == null) {
+                return preRelease == other.preRelease ? 0 : preRelease == null ? 1 : -1;
+            }
+            int count = Math.min(preRelease.length, other.preRelease.length);
+            for (int i = 0; i < count; i++) {
+                int result = compareIdentifier(preRelease[i], other.preRelease[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(preRelease.length, other.preRelease.length);
+        }
+
+        private static int compareIdentifier(Object a, Object b) {
+            if (a instanceof Integer && b instanceof Integer) {
+                return Integer.compare((Integer) a, (Integer) b);
+            }
+            // 数字标识低于字母标识
+            if (a instanceof Integer) {
+                return -1;
+            }
+            if (b instanceof Integer) {
+                return 1;
+            }
+            return ((String) a).compareTo((String) b);
+        }
+
+        @Override
+        public String toString() {
+            return raw;
+        }
+    }
+}
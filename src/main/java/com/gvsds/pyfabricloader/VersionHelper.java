@@ -1,8 +1,5 @@
 package com.gvsds.pyfabricloader;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Minecraft版本检测和兼容性工具类
  */
@@ -54,7 +51,7 @@ public class VersionHelper {
     }
     
     /**
-     * 比较两个Minecraft版本
+     * 比较两个Minecraft版本，规则与模组的版本约束一致（见 {@link VersionConstraint}）
      * @param version1 第一个版本
      * @param version2 第二个版本
      * @return 如果version1大于version2返回正数，如果小于返回负数，如果等于返回0
@@ -63,43 +60,14 @@ public class VersionHelper {
         if (version1 == null || version2 == null) {
             return 0;
         }
-        
-        // 解析版本号（如1.19.2 -> [1, 19, 2]）
-        int[] parts1 = parseVersion(version1);
-        int[] parts2 = parseVersion(version2);
-        
-        for (int i = 0; i < Math.max(parts1.length, parts2.length); i++) {
-            int part1 = i < parts1.length ? parts1[i] : 0;
-            int part2 = i < parts2.length ? parts2[i] : 0;
-            
-            if (part1 != part2) {
-                return part1 - part2;
-            }
-        }
-        
-        return 0;
+        return VersionConstraint.compare(version1, version2);
     }
     
     /**
-     * 解析版本字符串为整数数组
+     * 检查当前版本是否满足约束表达式，如 ">=1.19 <1.21" 或 "1.18.2 || 1.20.x"
      */
-    private static int[] parseVersion(String version) {
-        Pattern pattern = Pattern.compile("\\d+");
-        Matcher matcher = pattern.matcher(version);
-        
-        int count = 0;
-        Matcher countMatcher = pattern.matcher(version);
-        while (countMatcher.find()) {
-            count++;
-        }
-        
-        int[] parts = new int[count];
-        int index = 0;
-        while (matcher.find()) {
-            parts[index++] = Integer.parseInt(matcher.group());
-        }
-        
-        return parts;
+    public static boolean satisfies(String constraint) {
+        return VersionConstraint.parse(constraint).test(getMinecraftVersion());
     }
     
     /**
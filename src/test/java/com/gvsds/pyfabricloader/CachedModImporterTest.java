@@ -0,0 +1,115 @@
+package com.gvsds.pyfabricloader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.python.core.Py;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CachedModImporterTest {
+    private static final String[] MODULES = {"helper_cached", "pkg_cached", "pkg_cached.sub", "pkg_cached.other"};
+
+    @TempDir
+    File tempDir;
+
+    @AfterEach
+    void tearDown() {
+        forgetModules();
+    }
+
+    private static void forgetModules() {
+        for (String module : MODULES) {
+            Py.getSystemState().modules.invoke("pop", Py.newString(module), Py.None);
+        }
+    }
+
+    private void write(File root, String name, String source) throws Exception {
+        File file = new File(root, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 模拟一次启动：新的系统状态，清空共享的sys.modules中模组的模块后导入
+     */
+    private String importInFreshState(String pathEntry, Consumer<PySystemState> install) {
+        new PythonInterpreter().close();
+        PySystemState state = new PySystemState();
+        state.modules = Py.getSystemState().modules;
+        forgetModules();
+        state.path.append(Py.newString(pathEntry));
+        install.accept(state);
+        PythonInterpreter interpreter = new PythonInterpreter(null, state);
+        interpreter.exec("import helper_cached\nfrom pkg_cached import sub\nresult = '%s %s' % (helper_cached.VALUE, sub.X)");
+        return interpreter.get("result").toString();
+    }
+
+    @Test
+    void extractedModImportsAreServedFromBytecodeCache() throws Exception {
+        File modDir = new File(tempDir, "mod");
+        write(modDir, "helper_cached.py", "VALUE = 1\n");
+        write(modDir, "pkg_cached/__init__.py", "");
+        write(modDir, "pkg_cached/sub.py", "from . import other\nX = other.Y\n");
+        write(modDir, "pkg_cached/other.py", "Y = 'o'\n");
+        BytecodeCache cache = new BytecodeCache(new File(tempDir, "bytecode"), 0);
+
+        String path = modDir.getAbsolutePath();
+        assertEquals("1 o", importInFreshState(path, state -> CachedModImporter.installForDirectory(state, modDir, cache)));
+        assertEquals(0, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // 第二次启动时四个模块都命中缓存
+        assertEquals("1 o", importInFreshState(path, state -> CachedModImporter.installForDirectory(state, modDir, cache)));
+        assertEquals(4, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // 不在解压目录中写入$py.class
+        assertFalse(new File(modDir, "helper_cached$py.class").exists());
+        assertFalse(new File(modDir, "pkg_cached/sub$py.class").exists());
+    }
+
+    @Test
+    void archiveModImportsAreServedFromBytecodeCache() throws Exception {
+        File archive = new File(tempDir, "mod.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            String[][] entries = {
+                    {"helper_cached.py", "VALUE = 7\n"},
+                    {"pkg_cached/__init__.py", ""},
+                    {"pkg_cached/sub.py", "from . import other\nX = other.Y\n"},
+                    {"pkg_cached/other.py", "Y = 'z'\n"},
+            };
+            for (String[] entry : entries) {
+                out.putNextEntry(new ZipEntry(entry[0]));
+                out.write(entry[1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        BytecodeCache cache = new BytecodeCache(new File(tempDir, "bytecode"), 0);
+        Consumer<PySystemState> install = state -> {
+            try {
+                CachedModImporter.installForArchive(state, archive, cache);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+
+        assertEquals("7 z", importInFreshState(archive.getAbsolutePath(), install));
+        assertEquals("7 z", importInFreshState(archive.getAbsolutePath(), install));
+        assertEquals(4, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+}
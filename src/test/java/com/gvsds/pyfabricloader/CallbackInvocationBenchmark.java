@@ -0,0 +1,94 @@
+package com.gvsds.pyfabricloader;
+
+import net.minecraft.server.command.ServerCommandSource;
+import org.python.core.PyObject;
+import org.python.util.PythonInterpreter;
+
+/**
+ * 命令回调调用方式的计时对比
+ * 旧方式每次调用创建一个PythonInterpreter，set参数后exec调用语句再取回结果；
+ * 新方式与PyCommandAPI.timedCallback相同：经PyCallables.adapt得到的ArgumentCommandCallback调用，
+ * 期间进入模组上下文、CallbackWatchdog计时（跟踪函数生效），并在CommandStats中记录耗时。
+ * 命令来源传入null（Python中为None）。运行：
+ * java -cp &lt;jython.jar&gt;:&lt;classes&gt;:&lt;test classes&gt; com.gvsds.pyfabricloader.CallbackInvocationBenchmark [次数]
+ */
+public final class CallbackInvocationBenchmark {
+    private static final String CALLBACK = "def callback(source, arg):\n    return len(arg)\n";
+    private static final String MOD_ID = "benchmark";
+    // Commands.BudgetMs的默认值，不会触发中止，只保证跟踪函数处于生效状态
+    private static final long BUDGET_MILLIS = 1000;
+
+    private CallbackInvocationBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        PythonInterpreter module = new PythonInterpreter();
+        module.exec(CALLBACK);
+        PyObject callback = module.get("callback");
+        PyCallables.ArgumentCommandCallback adapted = PyCallables.adapt(callback, PyCallables.ArgumentCommandCallback.class);
+        CommandStats.Metrics metrics = CommandStats.getInstance().register("benchmark", MOD_ID);
+        ServerCommandSource source = null;
+        String argument = "hello";
+
+        // 预热，让JIT编译两条路径
+        for (int i = 0; i < Math.min(iterations, 5000); i++) {
+            viaInterpreter(callback, source, argument);
+            viaAdapter(adapted, metrics, source, argument);
+        }
+        for (int round = 1; round <= 3; round++) {
+            long interpreterNanos = time(iterations, () -> viaInterpreter(callback, source, argument));
+            long callNanos = time(iterations, () -> viaAdapter(adapted, metrics, source, argument));
+            System.out.printf("round %d: interpreter+exec %.2f us/call, adapter+watchdog+stats %.3f us/call, %.0fx%n", round,
+                    interpreterNanos / 1000.0 / iterations, callNanos / 1000.0 / iterations,
+                    (double) interpreterNanos / callNanos);
+        }
+        System.out.println(metrics.snapshot());
+        module.cleanup();
+    }
+
+    private static long time(int iterations, Runnable call) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            call.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 修改前的调用方式
+     */
+    private static int viaInterpreter(PyObject callback, ServerCommandSource source, String argument) {
+        PythonInterpreter interpreter = new PythonInterpreter();
+        try {
+            interpreter.set("__callback", callback);
+            interpreter.set("__source", source);
+            interpreter.set("__arg", argument);
+            interpreter.exec("__result = __callback(__source, __arg)");
+            Object result = interpreter.get("__result").__tojava__(Number.class);
+            return result instanceof Number ? ((Number) result).intValue() : 1;
+        } finally {
+            interpreter.cleanup();
+        }
+    }
+
+    /**
+     * 当前的调用方式，与PyCommandAPI.timedCallback中同步命令的处理相同
+     */
+    private static int viaAdapter(PyCallables.ArgumentCommandCallback adapted, CommandStats.Metrics metrics,
+                                  ServerCommandSource source, String argument) {
+        ModContext previousMod = ModContext.enter(MOD_ID);
+        CallbackWatchdog.Budget budget = CallbackWatchdog.getInstance().begin(MOD_ID, BUDGET_MILLIS);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = adapted.run(source, argument);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+            CallbackWatchdog.getInstance().end(budget);
+            previousMod.exit();
+        }
+    }
+}
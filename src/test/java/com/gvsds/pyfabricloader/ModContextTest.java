@@ -0,0 +1,97 @@
+package com.gvsds.pyfabricloader;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.python.core.Py;
+import org.python.core.PyException;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModContextTest {
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+
+    @TempDir
+    File modDir;
+
+    @AfterEach
+    void tearDown() {
+        ModContext.unregister("mod_a");
+        otherThread.shutdownNow();
+    }
+
+    /**
+     * 与PyInterpreterFactory相同：模组有自己的PySystemState，模组目录只在它的sys.path中
+     */
+    private PyObject createModCallback() throws Exception {
+        Files.write(new File(modDir, "helper_mod_a.py").toPath(), "VALUE = 42\n".getBytes(StandardCharsets.UTF_8));
+        new PythonInterpreter().close();
+        PySystemState state = new PySystemState();
+        state.path.append(Py.newString(modDir.getAbsolutePath()));
+        PythonInterpreter interpreter = new PythonInterpreter(null, state);
+        // 回调中延迟导入模组自己的模块
+        interpreter.exec("def callback():\n    import helper_mod_a\n    return helper_mod_a.VALUE\n");
+        ModContext.register("mod_a", state);
+        return interpreter.get("callback");
+    }
+
+    private <T> T onOtherThread(Supplier<T> task) throws Exception {
+        try {
+            return CompletableFuture.supplyAsync(task, otherThread).get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Test
+    void callbackImportsFromModPathOnAnotherThread() throws Exception {
+        PyObject callback = createModCallback();
+
+        // 没有进入模组上下文时，其他线程的系统状态中没有模组目录
+        Exception error = assertThrows(Exception.class, () -> onOtherThread(() -> callback.__call__()));
+        assertInstanceOf(PyException.class, error);
+
+        int value = onOtherThread(() -> {
+            ModContext context = ModContext.enter("mod_a");
+            try {
+                return Py.py2int(callback.__call__());
+            } finally {
+                context.exit();
+            }
+        });
+        assertEquals(42, value);
+    }
+
+    @Test
+    void exitRestoresModIdAndSystemState() throws Exception {
+        createModCallback();
+        onOtherThread(() -> {
+            PySystemState original = Py.getSystemState();
+            ModContext outer = ModContext.enter("mod_a");
+            ModContext inner = ModContext.enter("loading_mod");
+            assertEquals("loading_mod", ModContext.current());
+            inner.exit();
+            assertEquals("mod_a", ModContext.current());
+            outer.exit();
+            assertNull(ModContext.current());
+            assertSame(original, Py.getSystemState());
+            return null;
+        });
+    }
+}
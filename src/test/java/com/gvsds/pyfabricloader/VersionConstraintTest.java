@@ -0,0 +1,124 @@
+package com.gvsds.pyfabricloader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VersionConstraintTest {
+
+    private static boolean matches(String expression, String version) {
+        return VersionConstraint.parse(expression).test(version);
+    }
+
+    @Test
+    void comparisonOperators() {
+        assertTrue(matches(">=1.20.1", "1.20.1"));
+        assertTrue(matches(">=1.20.1", "1.21"));
+        assertFalse(matches(">=1.20.1", "1.20"));
+        assertTrue(matches(">1.20", "1.20.1"));
+        assertFalse(matches(">1.20", "1.20.0"));
+        assertTrue(matches("<=1.20.4", "1.20.4"));
+        assertFalse(matches("<=1.20.4", "1.20.5"));
+        assertTrue(matches("<1.20", "1.19.4"));
+        assertFalse(matches("<1.20", "1.20"));
+        // 数字段按数值比较，不是按字符串
+        assertTrue(matches(">1.9", "1.10"));
+        assertTrue(matches(">= 1.20", "1.20.2"));
+    }
+
+    @Test
+    void equalityIsExact() {
+        assertTrue(matches("1.19", "1.19"));
+        assertTrue(matches("=1.19", "1.19"));
+        assertTrue(matches("==1.19", "1.19"));
+        assertFalse(matches("=1.19", "1.19.0"));
+        assertFalse(matches("1.19", "1.19.0"));
+        assertTrue(matches("!=1.19", "1.19.0"));
+        assertFalse(matches("!=1.19", "1.19"));
+    }
+
+    @Test
+    void exclusionList() {
+        assertFalse(matches("!=[\"1.20.1\", \"1.34.7\"]", "1.20.1"));
+        assertFalse(matches("!=[\"1.20.1\", \"1.34.7\"]", "1.34.7"));
+        assertTrue(matches("!=[\"1.20.1\", \"1.34.7\"]", "1.20.2"));
+    }
+
+    @Test
+    void conjunctionOfTerms() {
+        assertTrue(matches(">=1.18 <1.21", "1.20.4"));
+        assertFalse(matches(">=1.18 <1.21", "1.21"));
+        assertFalse(matches(">=1.18 <1.21", "1.17.1"));
+    }
+
+    @Test
+    void hyphenRangeIncludesBothEnds() {
+        assertTrue(matches("1.18 - 1.20.4", "1.18"));
+        assertTrue(matches("1.18 - 1.20.4", "1.19.2"));
+        assertTrue(matches("1.18 - 1.20.4", "1.20.4"));
+        assertFalse(matches("1.18 - 1.20.4", "1.20.5"));
+        assertFalse(matches("1.18 - 1.20.4", "1.17.1"));
+    }
+
+    @Test
+    void wildcards() {
+        assertTrue(matches("1.20.x", "1.20"));
+        assertTrue(matches("1.20.x", "1.20.6"));
+        assertFalse(matches("1.20.x", "1.21"));
+        assertFalse(matches("1.20.x", "1.19.4"));
+        assertTrue(matches("1.20.*", "1.20.1"));
+        assertTrue(matches("1.x", "1.21.10"));
+        assertTrue(matches("*", "1.18.1"));
+        assertTrue(matches("*", "unknown"));
+        assertFalse(matches("!=1.20.x", "1.20.3"));
+        assertTrue(matches("!=1.20.x", "1.21"));
+        assertFalse(matches("!=*", "1.20"));
+        assertThrows(IllegalArgumentException.class, () -> VersionConstraint.parse("foo.x"));
+    }
+
+    @Test
+    void alternatives() {
+        assertTrue(matches("1.18.2 || >=1.20", "1.18.2"));
+        assertTrue(matches("1.18.2 || >=1.20", "1.20.1"));
+        assertFalse(matches("1.18.2 || >=1.20", "1.19"));
+        assertTrue(matches("<1.18 || 1.19.x || >=1.21", "1.19.3"));
+        assertThrows(IllegalArgumentException.class, () -> VersionConstraint.parse("1.18 || "));
+    }
+
+    @Test
+    void preReleaseOrdering() {
+        assertTrue(VersionConstraint.compare("1.20-pre1", "1.20") < 0);
+        assertTrue(VersionConstraint.compare("1.20-pre1", "1.20-pre2") < 0);
+        assertTrue(VersionConstraint.compare("1.20-pre2", "1.20-pre10") < 0);
+        assertTrue(VersionConstraint.compare("1.20-pre1", "1.20-rc1") < 0);
+        assertTrue(VersionConstraint.compare("1.20-rc1", "1.20") < 0);
+        assertTrue(VersionConstraint.compare("1.20", "1.20.1-pre1") < 0);
+        assertEquals(0, VersionConstraint.compare("1.20+build.5", "1.20"));
+        assertEquals(0, VersionConstraint.compare("v1.20", "1.20"));
+        assertFalse(matches(">=1.20", "1.20-rc1"));
+        assertTrue(matches("<1.20", "1.20-rc1"));
+    }
+
+    @Test
+    void nonNumericVersionsFailRangeChecks() {
+        assertFalse(matches(">=1.18", "unknown"));
+        assertFalse(matches("<1.21", "unknown"));
+        assertFalse(matches("1.18 - 1.20.4", "unknown"));
+        assertFalse(matches("1.20.x", "unknown"));
+        assertTrue(matches("!=1.20.x", "unknown"));
+        assertTrue(matches("unknown", "unknown"));
+        assertTrue(matches("!=1.20", "unknown"));
+        assertTrue(matches(">=1.18 || unknown", "unknown"));
+    }
+
+    @Test
+    void parsedConstraintsAreShared() {
+        assertSame(VersionConstraint.parse(">=1.20"), VersionConstraint.parse(">=1.20"));
+        assertSame(VersionConstraint.ANY, VersionConstraint.parse(""));
+        assertSame(VersionConstraint.ANY, VersionConstraint.parse(null));
+    }
+}